@@ -6,7 +6,9 @@ import org.unbiquitous.uImpala.util.Color;
 import org.unbiquitous.uImpala.util.Corner;
 
 /**
- * Class to animate a sprite sheet.
+ * Class to animate a sprite sheet. Animations created by an AssetManager are
+ * advanced by its Animator, once per update of the game scene. Otherwise,
+ * they read the clock when rendered.
  * @author Pimenta
  *
  */
@@ -23,31 +25,76 @@ public class Animation {
     this.fps = fps;
     frame = 0;
     frameInt = 0;
-    clipWidth = sprite.getWidth()/frames;
-    clipHeight = sprite.getHeight();
+    int clipWidth = sprite.getWidth()/frames;
+    regions = new SpriteRegion[frames];
+    for (int i = 0; i < frames; i++)
+      regions[i] = sprite.region(clipWidth*i, 0, clipWidth, sprite.getHeight());
     lastTime = Time.get();
     running = true;
-    sprite.clip(0, 0, clipWidth, clipHeight);
+  }
+  
+  /**
+   * Constructor.
+   * @param sprite Sprite to render.
+   * @param frames Number of frames.
+   * @param fps Number of frames per second.
+   * @param animator Animator to advance the animation.
+   */
+  protected Animation(Sprite sprite, int frames, float fps, Animator animator) {
+    this(sprite, frames, fps);
+    lock = animator;
+    synchronized (animator) {
+      this.animator = animator;
+      index = animator.add(this, frames, fps);
+    }
+  }
+  
+  /**
+   * Removes the animation from its Animator, which then stops advancing it,
+   * and makes it read the clock when rendered, keeping its frame. Optional:
+   * the Animator holds its animations weakly and removes them once they are
+   * no longer referenced and collected, and releasing the AssetManager
+   * removes all of them.
+   */
+  public void dispose() {
+    synchronized (lock) {
+      if (animator != null)
+        animator.remove(index);
+    }
   }
   
   /**
    * Pauses the animation.
    */
   public void pause() {
-    if (!running)
-      return;
-    pauseTime = Time.get();
-    running = false;
+    synchronized (lock) {
+      if (animator != null) {
+        running = false;
+        animator.setRunning(index, false);
+        return;
+      }
+      if (!running)
+        return;
+      pauseTime = Time.get();
+      running = false;
+    }
   }
   
   /**
    * Resumes the animation.
    */
   public void resume() {
-    if (running)
-      return;
-    lastTime += Time.get() - pauseTime;
-    running = true;
+    synchronized (lock) {
+      if (animator != null) {
+        running = true;
+        animator.setRunning(index, true);
+        return;
+      }
+      if (running)
+        return;
+      lastTime += Time.get() - pauseTime;
+      running = true;
+    }
   }
   
   /**
@@ -55,7 +102,9 @@ public class Animation {
    * @return Frame rate in frames per second.
    */
   public float getFPS() {
-    return fps;
+    synchronized (lock) {
+      return animator != null ? animator.getFPS(index) : fps;
+    }
   }
   
   /**
@@ -63,7 +112,11 @@ public class Animation {
    * @param fps Frame rate in frames per second.
    */
   public void setFPS(float fps) {
-    this.fps = fps;
+    synchronized (lock) {
+      if (animator != null)
+        animator.setFPS(index, fps);
+      this.fps = fps;
+    }
   }
   
   /**
@@ -71,7 +124,9 @@ public class Animation {
    * @return Frame in the interval [0, frames).
    */
   public float getFrame() {
-    return frame;
+    synchronized (lock) {
+      return animator != null ? animator.getFrame(index) : frame;
+    }
   }
   
   /**
@@ -79,7 +134,11 @@ public class Animation {
    * @param frame Frame in the interval [0, frames).
    */
   public void setFrame(float frame) {
-    this.frame = frame;
+    synchronized (lock) {
+      if (animator != null)
+        animator.setFrame(index, frame);
+      this.frame = frame;
+    }
   }
   
   /**
@@ -157,7 +216,7 @@ public class Animation {
    */
   public void render(Screen screen, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color) {
     update();
-    sprite.render(screen, x, y, corner, opacity, angle, scaleX, scaleY, color);
+    regions[frameInt].render(screen, x, y, corner, opacity, angle, scaleX, scaleY, color);
   }
   
   /**
@@ -170,25 +229,54 @@ public class Animation {
 //==============================================================================
 //nothings else matters from here to below
 //==============================================================================
+  /**
+   * Engine's private use. Called by the Animator when this animation is
+   * removed, to keep its state.
+   */
+  void detach(float frame, float fps, boolean running) {
+    this.frame = frame;
+    this.fps = fps;
+    this.running = running;
+    lastTime = Time.get();
+    pauseTime = lastTime;
+    animator = null;
+    index = -1;
+  }
+  
+  /**
+   * Engine's private use. Called by the Animator when this animation is
+   * moved in its arrays.
+   */
+  void moved(int index) {
+    this.index = index;
+  }
+  
   private void update() {
-    if (!running)
-      return;
+    synchronized (lock) {
+      if (animator != null)
+        frame = animator.getFrame(index);
+      else {
+        if (!running)
+          return;
     
-    long now = Time.get();
-    float dt = (now - lastTime)/1000f;
-    lastTime = now;
+        long now = Time.get();
+        float dt = (now - lastTime)/1000f;
+        lastTime = now;
     
-    frame += fps*dt;
-    frame -= frames*Math.floor(frame/frames);
-    if (frameInt != (int)frame) {
-      frameInt = (int)frame;
-      sprite.clip(clipWidth*frameInt, 0, clipWidth, clipHeight);
+        frame += fps*dt;
+        frame -= frames*Math.floor(frame/frames);
+      }
+      frameInt = Math.min(Math.max((int)frame, 0), frames - 1);
     }
   }
   
   private Sprite sprite;
   private float fps, frame;
-  private int frames, frameInt, clipWidth, clipHeight;
+  private int frames, frameInt;
+  private SpriteRegion[] regions;
   private long lastTime, pauseTime;
   private boolean running;
+  private Animator animator = null;
+  private int index = -1;
+  private Object lock = this;   // the animator, which moves and detaches it
 }
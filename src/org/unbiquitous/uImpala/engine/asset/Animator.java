@@ -0,0 +1,222 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Class to advance all the animations of a game scene at once, by the engine
+ * tick. The state of the animations is kept in primitive arrays, so a frame
+ * costs a tight loop and no clock reads. The animations stop while the scene
+ * is frozen or the animator is paused. Animations are held weakly, so the
+ * ones no longer referenced by the game are removed once collected. The
+ * methods are synchronized, so animations may be created on the asset
+ * workers or by objects of a scene updated in parallel.
+ * @see AssetManager#getAnimator()
+ */
+public final class Animator {
+  /**
+   * Get the time scale applied to every animator.
+   * @return Time scale. 1 is real time.
+   */
+  public static float getGlobalTimeScale() {
+    return globalTimeScale;
+  }
+  
+  /**
+   * Sets the time scale applied to every animator, e.g. for slow motion.
+   * @param scale Time scale. 1 is real time, 0 stops all animations.
+   */
+  public static void setGlobalTimeScale(float scale) {
+    globalTimeScale = scale;
+  }
+  
+  /**
+   * Query if paused.
+   * @return True if paused.
+   */
+  public boolean isPaused() {
+    return paused;
+  }
+  
+  /**
+   * Pauses or resumes all the animations of this animator.
+   * @param paused Pass true to pause.
+   */
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+  
+  /**
+   * Get the time scale of this animator.
+   * @return Time scale. 1 is real time.
+   */
+  public float getTimeScale() {
+    return timeScale;
+  }
+  
+  /**
+   * Sets the time scale of this animator, multiplied by the global one.
+   * @param scale Time scale. 1 is real time.
+   */
+  public void setTimeScale(float scale) {
+    timeScale = scale;
+  }
+  
+  /**
+   * Get the number of animations registered, including the ones not
+   * referenced anymore and not removed yet.
+   * @return Number of animations.
+   */
+  public synchronized int size() {
+    return count;
+  }
+  
+  /**
+   * Engine's private use. Advances every running animation.
+   * @param dt Time elapsed in seconds.
+   */
+  public synchronized void update(float dt) {
+    expunge();
+    if (paused)
+      return;
+    dt *= timeScale*globalTimeScale;
+    if (dt == 0)
+      return;
+    float[] frame = this.frame, fps = this.fps;
+    int[] frames = this.frames;
+    boolean[] running = this.running;
+    for (int i = 0; i < count; i++) {
+      if (!running[i])
+        continue;
+      float f = frame[i] + fps[i]*dt;
+      if (f >= frames[i] || f < 0)
+        f -= frames[i]*(float)Math.floor(f/frames[i]);
+      frame[i] = f;
+    }
+  }
+  
+  /**
+   * Removes every animation. Engine's private use.
+   */
+  public synchronized void clear() {
+    for (int i = 0; i < count; i++) {
+      Animation owner = owners[i].get();
+      if (owner != null)
+        owner.detach(frame[i], fps[i], running[i]);
+      owners[i].clear();
+      owners[i] = null;
+    }
+    count = 0;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static volatile float globalTimeScale = 1;
+  
+  private volatile boolean paused = false;
+  private volatile float timeScale = 1;
+  private int count = 0;
+  private Owner[] owners = new Owner[16];
+  private ReferenceQueue<Animation> collected = new ReferenceQueue<Animation>();
+  private float[] frame = new float[16], fps = new float[16];
+  private int[] frames = new int[16];
+  private boolean[] running = new boolean[16];
+  
+  /**
+   * Engine's private use.
+   * @return Index of the animation.
+   */
+  synchronized int add(Animation animation, int frames, float fps) {
+    if (count == owners.length) {
+      int n = 2*count;
+      Owner[] o = new Owner[n];
+      float[] f = new float[n], s = new float[n];
+      int[] fs = new int[n];
+      boolean[] r = new boolean[n];
+      System.arraycopy(owners, 0, o, 0, count);
+      System.arraycopy(frame, 0, f, 0, count);
+      System.arraycopy(this.fps, 0, s, 0, count);
+      System.arraycopy(this.frames, 0, fs, 0, count);
+      System.arraycopy(running, 0, r, 0, count);
+      owners = o;
+      frame = f;
+      this.fps = s;
+      this.frames = fs;
+      running = r;
+    }
+    owners[count] = new Owner(animation, collected, count);
+    frame[count] = 0;
+    this.fps[count] = fps;
+    this.frames[count] = frames;
+    running[count] = true;
+    return count++;
+  }
+  
+  /**
+   * Engine's private use. Removes an animation, moving the last one to its
+   * index.
+   */
+  synchronized void remove(int index) {
+    Animation owner = owners[index].get();
+    if (owner != null)
+      owner.detach(frame[index], fps[index], running[index]);
+    owners[index].clear();
+    int last = --count;
+    if (index != last) {
+      owners[index] = owners[last];
+      frame[index] = frame[last];
+      fps[index] = fps[last];
+      frames[index] = frames[last];
+      running[index] = running[last];
+      owners[index].index = index;
+      owner = owners[index].get();
+      if (owner != null)
+        owner.moved(index);
+    }
+    owners[last] = null;
+  }
+  
+  synchronized float getFrame(int index) {
+    return frame[index];
+  }
+  
+  synchronized void setFrame(int index, float frame) {
+    this.frame[index] = frame;
+  }
+  
+  synchronized float getFPS(int index) {
+    return fps[index];
+  }
+  
+  synchronized void setFPS(int index, float fps) {
+    this.fps[index] = fps;
+  }
+  
+  synchronized void setRunning(int index, boolean running) {
+    this.running[index] = running;
+  }
+  
+  /**
+   * Weak reference to an animation, knowing its index.
+   */
+  private static final class Owner extends WeakReference<Animation> {
+    private int index;
+    
+    private Owner(Animation animation, ReferenceQueue<Animation> queue, int index) {
+      super(animation, queue);
+      this.index = index;
+    }
+  }
+  
+  /**
+   * Removes the animations collected since the last call.
+   */
+  private void expunge() {
+    Owner owner;
+    while ((owner = (Owner)collected.poll()) != null) {
+      // cleared by remove() or clear() before being enqueued
+      if (owner.index < count && owners[owner.index] == owner)
+        remove(owner.index);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Process-wide cache of assets, shared by reference count among the asset
+ * managers of all game scenes. An asset nobody references is kept until the
+ * memory budget is exceeded, and then the least recently used ones are
+ * evicted first. So assets used by consecutive scenes are loaded only once.
+ * @see AssetManager#shared(String, AssetCache.Loader)
+ */
+public final class AssetCache {
+  /**
+   * Class to load an asset missing in the cache.
+   * @param <T> Type of the asset.
+   */
+  public static abstract class Loader<T> {
+    /**
+     * Loads the asset. May be called on any thread.
+     * @return Asset loaded.
+     */
+    public abstract T load();
+  
+    /**
+     * Estimates the memory used by the asset.
+     * @param asset Asset loaded.
+     * @return Size in bytes. The default implementation returns zero.
+     */
+    public long size(T asset) {
+      return 0;
+    }
+  
+    /**
+     * Releases the resources of an asset evicted from the cache.
+     * @param asset Asset evicted.
+     */
+    public void dispose(T asset) {
+  
+    }
+  }
+  
+  /**
+   * Get an asset, loading it if missing, and add a reference to it.
+   * @param key Key of the asset. Must identify the path and every parameter
+   * used to load it.
+   * @param loader Loader for the asset, used only if it is missing.
+   * @return Asset.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T acquire(String key, Loader<T> loader) {
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        entries.put(key, entry);
+      }
+      entry.refs++;
+    }
+    // other assets may be acquired while this one loads
+    synchronized (entry) {
+      if (entry.loader == null) {
+        boolean loaded = false;
+        try {
+          entry.asset = loader.load();
+          entry.size = loader.size((T)entry.asset);
+          entry.loader = loader;
+          loaded = true;
+        } finally {
+          synchronized (entries) {
+            if (loaded) {
+              size += entry.size;
+              evict();
+            }
+            else if (--entry.refs == 0)
+              entries.remove(key);
+          }
+        }
+      }
+      return (T)entry.asset;
+    }
+  }
+  
+  /**
+   * Removes a reference to an asset. The asset stays cached while the
+   * budget allows.
+   * @param key Key of the asset.
+   */
+  public static void release(String key) {
+    synchronized (entries) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.refs > 0) {
+        entry.refs--;
+        evict();
+      }
+    }
+  }
+  
+  /**
+   * Get the memory budget.
+   * @return Budget in bytes.
+   */
+  public static long getBudget() {
+    synchronized (entries) {
+      return budget;
+    }
+  }
+  
+  /**
+   * Sets the memory budget, evicting assets nobody references if exceeded.
+   * @param bytes Budget in bytes. Zero evicts assets as soon as nobody
+   * references them.
+   */
+  public static void setBudget(long bytes) {
+    synchronized (entries) {
+      budget = bytes;
+      evict();
+    }
+  }
+  
+  /**
+   * Get the memory used by the assets cached.
+   * @return Sum of the sizes estimated by the loaders, in bytes.
+   */
+  public static long getSize() {
+    synchronized (entries) {
+      return size;
+    }
+  }
+  
+  /**
+   * Get the number of assets cached, referenced or not.
+   * @return Number of assets.
+   */
+  public static int getCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+  
+  /**
+   * Evicts every asset nobody references.
+   */
+  public static void trim() {
+    synchronized (entries) {
+      long tmp = budget;
+      budget = 0;
+      evict();
+      budget = tmp;
+    }
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final class Entry {
+    private Object asset = null;
+    private Loader<?> loader = null;
+    private long size = 0;
+    private int refs = 0;
+  }
+  
+  // in access order, so the least recently acquired come first
+  private static final LinkedHashMap<String, Entry> entries =
+  new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private static long budget = 64L << 20, size = 0;   // unit: bytes
+  
+  private AssetCache() {
+  
+  }
+  
+  @SuppressWarnings("unchecked")
+  private static void evict() {
+    Iterator<Entry> i = entries.values().iterator();
+    while (size > budget && i.hasNext()) {
+      Entry entry = i.next();
+      if (entry.refs == 0 && entry.loader != null) {
+        i.remove();
+        size -= entry.size;
+        ((Loader<Object>)entry.loader).dispose(entry.asset);
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Handle to an asset being loaded by a worker thread.
+ * @see AssetManager#async(Callable)
+ * @param <T> Type of the asset.
+ */
+public final class AssetFuture<T> {
+  /**
+   * Interface to be notified on the game thread when the asset is loaded.
+   * @param <T> Type of the asset.
+   */
+  public static interface Listener<T> {
+    /**
+     * Called on the game thread, at the beginning of the frame after the
+     * asset was loaded.
+     * @param asset Asset loaded.
+     */
+    public void loaded(T asset);
+    
+    /**
+     * Called on the game thread, at the beginning of the frame after loading
+     * the asset failed, instead of loaded().
+     * @param error Exception or error thrown by the load.
+     */
+    public void failed(Throwable error);
+  }
+  
+  /**
+   * Query if the asset is loaded. Does not block.
+   * @return True if loaded, or if loading failed.
+   */
+  public boolean isDone() {
+    return done;
+  }
+  
+  /**
+   * Query if loading the asset failed. Does not block.
+   * @return True if done and failed.
+   */
+  public synchronized boolean isFailed() {
+    return error != null;
+  }
+  
+  /**
+   * Get the asset, waiting until it is loaded.
+   * @return Asset loaded.
+   * @throws Error If loading failed, caused by the exception thrown by the
+   * load.
+   */
+  public synchronized T get() {
+    boolean interrupted = false;
+    while (!done) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    if (error != null)
+      throw new Error("Problems while loading asset.", error);
+    return asset;
+  }
+  
+  /**
+   * Sets the listener. If the asset was already delivered to the game
+   * thread, the listener is called immediately.
+   * @param listener Listener to be called once.
+   */
+  public void setListener(Listener<T> listener) {
+    this.listener = listener;
+    if (delivered)
+      deliver();
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private Callable<T> task;
+  private AssetManager manager;
+  private T asset = null;
+  private Throwable error = null;
+  private volatile boolean done = false;
+  private boolean delivered = false;
+  private Listener<T> listener = null;
+  
+  AssetFuture(AssetManager manager, Callable<T> task) {
+    this.manager = manager;
+    this.task = task;
+  }
+  
+  /**
+   * Engine's private use. Loads the asset on the current thread.
+   */
+  void load() {
+    T tmp = null;
+    Throwable err = null;
+    try {
+      tmp = task.call();
+    } catch (Throwable t) {
+      err = t;
+    }
+    synchronized (this) {
+      asset = tmp;
+      error = err;
+      done = true;
+      task = null;
+      notifyAll();
+    }
+    manager.loaded(this);
+  }
+  
+  /**
+   * Engine's private use. Called on the game thread.
+   */
+  void deliver() {
+    delivered = true;
+    Listener<T> l = listener;
+    if (l != null) {
+      listener = null;
+      T asset;
+      Throwable error;
+      synchronized (this) {
+        asset = this.asset;
+        error = this.error;
+      }
+      if (error != null)
+        l.failed(error);
+      else
+        l.loaded(asset);
+    }
+  }
+}
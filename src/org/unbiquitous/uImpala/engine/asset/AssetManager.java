@@ -1,10 +1,18 @@
 package org.unbiquitous.uImpala.engine.asset;
 
 import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.unbiquitous.uImpala.engine.core.GameSingletons;
 import org.unbiquitous.uImpala.engine.core.GameSettings;
+import org.unbiquitous.uImpala.engine.time.Tracer;
 import org.unbiquitous.uImpala.util.Color;
 import org.unbiquitous.uImpala.util.math.Point;
 
@@ -43,7 +51,7 @@ public abstract class AssetManager {
    * @return Animation created.
    */
   public Animation newAnimation(Sprite sprite, int frames, float fps) {
-    return new Animation(sprite, frames, fps);
+    return new Animation(sprite, frames, fps, animator);
   }
   
   /**
@@ -54,7 +62,84 @@ public abstract class AssetManager {
    * @return Animation created.
    */
   public Animation newAnimation(String path, int frames, float fps) {
-    return new Animation(newSprite(path), frames, fps);
+    return new Animation(sheet(path), frames, fps, animator);
+  }
+  
+  /**
+   * Get the animator of the animations created by this manager, advanced
+   * once per update of the game scene.
+   * @return Animator.
+   */
+  public Animator getAnimator() {
+    return animator;
+  }
+  
+  /**
+   * Create an atlas, packing images in pages.
+   * @param pageWidth Width of each page.
+   * @param pageHeight Height of each page.
+   * @param paths Image paths. No image may be larger than a page.
+   * @return Atlas created.
+   */
+  public Atlas newAtlas(int pageWidth, int pageHeight, String... paths) {
+    return new Atlas(this, pageWidth, pageHeight, paths);
+  }
+  
+  /**
+   * Engine's private use. Create a sprite from an image in memory. Platforms
+   * able to do it should override.
+   * @param image Image, with alpha.
+   * @return Sprite created, or null if not supported, which is the default.
+   */
+  protected Sprite newSprite(BufferedImage image) {
+    return null;
+  }
+  
+  /**
+   * Engine's private use. Release a sprite created by this manager that will
+   * not be rendered anymore. Platforms keeping images outside the heap, e.g.
+   * in textures, should override.
+   * @param sprite Sprite to release.
+   */
+  protected void disposeSprite(Sprite sprite) {
+    
+  }
+  
+  /**
+   * Engine's private use. Create an atlas page by copying images into a
+   * blank image. Platforms able to compose images should override.
+   * @param width Page width.
+   * @param height Page height.
+   * @param paths Image paths.
+   * @param xs Coordinate x of the top-left corner of each image in the page.
+   * @param ys Coordinate y of the top-left corner of each image in the page.
+   * @return Sprite of the page, or null if not supported, which is the
+   * default.
+   */
+  protected Sprite newAtlasPage(int width, int height, String[] paths, int[] xs, int[] ys) {
+    return null;
+  }
+  
+  /**
+   * Engine's private use. Run rendering operations once on an offscreen
+   * image of the screen, so the image can be drawn instead of running them
+   * again. Platforms able to render to images should override, together
+   * with disposeSnapshot().
+   * @param renderer Rendering operations. Called on the render thread.
+   * @return Operation that draws the image where the rendering operations
+   * would have drawn, or null if not supported, which is the default.
+   */
+  public Runnable newSnapshot(Runnable renderer) {
+    return null;
+  }
+  
+  /**
+   * Engine's private use. Release the image of an operation created by
+   * newSnapshot(). Called on the render thread.
+   * @param snapshot Operation created by newSnapshot().
+   */
+  public void disposeSnapshot(Runnable snapshot) {
+    
   }
   
   /**
@@ -73,6 +158,25 @@ public abstract class AssetManager {
    */
   public abstract Text newText(Font font, String text);
   
+  /**
+   * Create a text rendered from glyphs rasterized once into an atlas, which
+   * is cheap to change every frame. Falls back to newText() if the platform
+   * cannot create sprites from images.
+   * @param font Java Font.
+   * @param antiAlias Apply anti-aliasing when rasterizing.
+   * @param text Text to render.
+   * @return Text created.
+   */
+  public Text newGlyphText(Font font, boolean antiAlias, String text) {
+    GlyphCache glyphs = glyphs(font, antiAlias);
+    if (!glyphs.isSupported()) {
+      Text tmp = newText(font, text);
+      tmp.options(null, null, antiAlias);
+      return tmp;
+    }
+    return new GlyphText(this, glyphs, font, antiAlias, text);
+  }
+  
   /**
    * Create an audio.
    * @param path Audio path.
@@ -99,7 +203,7 @@ public abstract class AssetManager {
    * @return TileSet created.
    */
   public TileSet newTileSet(String path, int rows, int cols) {
-    return new TileSet(newSprite(path), rows, cols);
+    return new TileSet(sheet(path), rows, cols);
   }
   
   /**
@@ -108,16 +212,144 @@ public abstract class AssetManager {
    * @return Map from text file.
    */
   public Map getMap(String path) {
-    Map asset = (Map)assets.get(path);
-    if (asset != null)
-      return asset;
-    
-    asset = new Map(
-      GameSingletons.get(GameSettings.class).get("root_path") + "/" + path
-    );
+    final String fullPath =
+      GameSingletons.get(GameSettings.class).get("root_path") + "/" + path;
+    return shared("Map:" + fullPath, new AssetCache.Loader<Map>() {
+      public Map load() {
+        Tracer.begin("asset", fullPath);
+        try {
+          return new Map(fullPath);
+        } finally {
+          Tracer.end();
+        }
+      }
     
-    assets.put(path, asset);
-    return asset;
+      public long size(Map asset) {
+        return asset.size();
+      }
+    });
+  }
+  
+  /**
+   * Create a sprite on a worker thread.
+   * @param path Image path.
+   * @return Handle to the sprite.
+   */
+  public AssetFuture<Sprite> newSpriteAsync(final String path) {
+    return async(new Callable<Sprite>() {
+      public Sprite call() {
+        return newSprite(path);
+      }
+    });
+  }
+  
+  /**
+   * Create a text on a worker thread.
+   * @param fontPath Font path.
+   * @param text Text to render.
+   * @return Handle to the text.
+   */
+  public AssetFuture<Text> newTextAsync(final String fontPath, final String text) {
+    return async(new Callable<Text>() {
+      public Text call() {
+        return newText(fontPath, text);
+      }
+    });
+  }
+  
+  /**
+   * Create an audio on a worker thread.
+   * @param path Audio path.
+   * @return Handle to the audio.
+   */
+  public AssetFuture<Audio> newAudioAsync(final String path) {
+    return async(new Callable<Audio>() {
+      public Audio call() {
+        return newAudio(path);
+      }
+    });
+  }
+  
+  /**
+   * Get a map from text file on a worker thread.
+   * @param path Text file path.
+   * @return Handle to the map.
+   */
+  public AssetFuture<Map> getMapAsync(final String path) {
+    return async(new Callable<Map>() {
+      public Map call() {
+        return getMap(path);
+      }
+    });
+  }
+  
+  /**
+   * Loads an asset on a worker thread. The workers are shared by all
+   * managers, one per processor. The loads are counted in the progress of
+   * this manager.
+   * @param task Task to load the asset. Must be thread-safe.
+   * @return Handle to the asset.
+   */
+  public <T> AssetFuture<T> async(Callable<T> task) {
+    final AssetFuture<T> future = new AssetFuture<T>(this, task);
+    synchronized (completed) {
+      requested++;
+    }
+    execute(new Runnable() {
+      public void run() {
+        future.load();
+      }
+    });
+    return future;
+  }
+  
+  /**
+   * Query the progress of the asynchronous loads of this manager.
+   * @return Fraction of the loads requested that are done, in [0, 1]. One if
+   * none was requested.
+   */
+  public float getProgress() {
+    synchronized (completed) {
+      return requested == 0 ? 1 : ((float)loaded)/requested;
+    }
+  }
+  
+  /**
+   * Query if every asynchronous load of this manager is done.
+   * @return True if done.
+   */
+  public boolean isLoaded() {
+    synchronized (completed) {
+      return loaded == requested;
+    }
+  }
+  
+  /**
+   * Waits until every asynchronous load of this manager is done.
+   */
+  public void await() {
+    boolean interrupted = false;
+    synchronized (completed) {
+      while (loaded < requested) {
+        try {
+          completed.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+  
+  /**
+   * Engine's private use. Calls the listeners of the assets loaded since
+   * the last call.
+   */
+  public void dispatch() {
+    AssetFuture<?> future;
+    while ((future = next()) != null)
+      future.deliver();
   }
   
   /**
@@ -127,7 +359,7 @@ public abstract class AssetManager {
    * @return TileMap created.
    */
   public TileMap newTileMap(Map map, TileSet tileSet) {
-    return new TileMap(map, tileSet);
+    return new TileMap(map, tileSet, this);
   }
   
   /**
@@ -137,7 +369,7 @@ public abstract class AssetManager {
    * @return TileMap created.
    */
   public TileMap newTileMap(String mapPath, TileSet tileSet) {
-    return new TileMap(getMap(mapPath), tileSet);
+    return new TileMap(getMap(mapPath), tileSet, this);
   }
   
   /**
@@ -149,7 +381,7 @@ public abstract class AssetManager {
    * @return TileMap created.
    */
   public TileMap newTileMap(Map map, Sprite tsSprite, int tsRows, int tsCols) {
-    return new TileMap(map, new TileSet(tsSprite, tsRows, tsCols));
+    return new TileMap(map, new TileSet(tsSprite, tsRows, tsCols), this);
   }
   
   /**
@@ -161,7 +393,7 @@ public abstract class AssetManager {
    * @return TileMap created.
    */
   public TileMap newTileMap(Map map, String tsPath, int tsRows, int tsCols) {
-    return new TileMap(map, new TileSet(newSprite(tsPath), tsRows, tsCols));
+    return new TileMap(map, new TileSet(newSprite(tsPath), tsRows, tsCols), this);
   }
   
   /**
@@ -173,7 +405,7 @@ public abstract class AssetManager {
    * @return TileMap created.
    */
   public TileMap newTileMap(String mapPath, Sprite tsSprite, int tsRows, int tsCols) {
-    return new TileMap(getMap(mapPath), new TileSet(tsSprite, tsRows, tsCols));
+    return new TileMap(getMap(mapPath), new TileSet(tsSprite, tsRows, tsCols), this);
   }
   
   /**
@@ -185,7 +417,49 @@ public abstract class AssetManager {
    * @return TileMap created.
    */
   public TileMap newTileMap(String mapPath, String tsPath, int tsRows, int tsCols) {
-    return new TileMap(getMap(mapPath), new TileSet(newSprite(tsPath), tsRows, tsCols));
+    return new TileMap(getMap(mapPath), new TileSet(newSprite(tsPath), tsRows, tsCols), this);
+  }
+  
+  /**
+   * Engine's private use. Create an image with the tiles of a chunk of a
+   * tile map. Platforms able to render to images should override.
+   * @param tileSet TileSet to render each tile.
+   * @param tiles Tiles of the chunk, in row-major order. Zero is empty,
+   * other values are tile IDs plus one.
+   * @param rows Number of rows of the chunk.
+   * @param cols Number of columns of the chunk.
+   * @return Sprite of the chunk, or null if not supported, which is the
+   * default.
+   */
+  protected Sprite newTileChunk(TileSet tileSet, int[] tiles, int rows, int cols) {
+    return null;
+  }
+  
+  /**
+   * Create a tile map loaded in chunks around a view.
+   * @param source Source of the chunks.
+   * @param rows Number of rows of the whole map.
+   * @param cols Number of columns of the whole map.
+   * @param tileSet TileSet to render tiles.
+   * @param chunkSize Number of rows and columns of each chunk.
+   * @param maxChunks Number of chunks to keep resident.
+   * @return ChunkedTileMap created.
+   */
+  public ChunkedTileMap newChunkedTileMap(ChunkedTileMap.Source source, int rows, int cols, TileSet tileSet, int chunkSize, int maxChunks) {
+    return new ChunkedTileMap(source, rows, cols, tileSet, chunkSize, maxChunks);
+  }
+  
+  /**
+   * Create a tile map loaded in chunks around a view, from a logical map.
+   * @param mapPath Logical map path (preferably binary, read in place).
+   * @param tileSet TileSet to render tiles.
+   * @param chunkSize Number of rows and columns of each chunk.
+   * @param maxChunks Number of chunks to keep resident.
+   * @return ChunkedTileMap created.
+   */
+  public ChunkedTileMap newChunkedTileMap(String mapPath, TileSet tileSet, int chunkSize, int maxChunks) {
+    Map map = getMap(mapPath);
+    return new ChunkedTileMap(ChunkedTileMap.source(map), map.getRows(), map.getCols(), tileSet, chunkSize, maxChunks);
   }
   
   public abstract SimetricShape newSimetricShape(Point center, Color paint, float radius, int numberOfSides);
@@ -198,5 +472,201 @@ public abstract class AssetManager {
    */
   public abstract void destroy();
   
-  protected HashMap<String, Object> assets = new HashMap<String, Object>();
+  /**
+   * Engine's private use. Releases the references of this manager to the
+   * assets in the AssetCache.
+   */
+  public void release() {
+    animator.clear();
+    release(sharpGlyphs);
+    release(smoothGlyphs);
+    synchronized (assets) {
+      for (String key : sharedKeys) {
+        assets.remove(key);
+        AssetCache.release(key);
+      }
+      sharedKeys.clear();
+    }
+  }
+  
+  /**
+   * Get an asset from the AssetCache, shared with the other managers.
+   * Implementations should load through this method every asset that can
+   * outlive a game scene.
+   * @param key Key of the asset. Must identify the path and every parameter
+   * used to load it.
+   * @param loader Loader for the asset, used only if it is not cached. Runs
+   * without holding the lock of the assets of this manager.
+   * @return Asset.
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> T shared(String key, AssetCache.Loader<T> loader) {
+    T asset = (T)assets.get(key);
+    if (asset != null)
+      return asset;
+    asset = AssetCache.acquire(key, loader);
+    T other;
+    synchronized (assets) {
+      other = (T)assets.get(key);
+      if (other == null) {
+        assets.put(key, asset);
+        sharedKeys.add(key);
+        return asset;
+      }
+    }
+    // another thread acquired it meanwhile, drop the extra reference
+    AssetCache.release(key);
+    return other;
+  }
+  
+  /**
+   * Assets of this manager, by key. Asynchronous loads call the factory
+   * methods on worker threads, so every method of the map is synchronized
+   * on it. Hold its lock to iterate or to get and put atomically.
+   */
+  protected HashMap<String, Object> assets = new SynchronizedHashMap();
+  private ArrayList<String> sharedKeys = new ArrayList<String>();
+  private HashMap<Font, GlyphCache> sharpGlyphs = new HashMap<Font, GlyphCache>();
+  private HashMap<Font, GlyphCache> smoothGlyphs = new HashMap<Font, GlyphCache>();
+  private Animator animator = new Animator();
+  private LinkedList<AssetFuture<?>> completed = new LinkedList<AssetFuture<?>>();
+  private int requested = 0, loaded = 0;
+  
+  private static ExecutorService workers = null;
+  
+  private static synchronized ExecutorService workers() {
+    if (workers == null) {
+      workers = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+          private int count = 0;
+          
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "uImpala-asset-" + count++);
+            t.setDaemon(true);
+            return t;
+          }
+        }
+      );
+    }
+    return workers;
+  }
+  
+  /**
+   * Engine's private use. Runs a task on the asset workers.
+   */
+  static void execute(Runnable task) {
+    workers().execute(task);
+  }
+  
+  /**
+   * Engine's private use. Called by a worker when a load is done.
+   */
+  void loaded(AssetFuture<?> future) {
+    synchronized (completed) {
+      completed.add(future);
+      loaded++;
+      completed.notifyAll();
+    }
+  }
+  
+  /**
+   * Engine's private use. Get the glyphs of a font, shared by the texts of
+   * this manager.
+   */
+  GlyphCache glyphs(Font font, boolean antiAlias) {
+    // keyed on the font itself, since its name misses the size, transform
+    // and attributes
+    HashMap<Font, GlyphCache> caches = antiAlias ? smoothGlyphs : sharpGlyphs;
+    GlyphCache glyphs;
+    synchronized (caches) {
+      glyphs = caches.get(font);
+    }
+    if (glyphs != null)
+      return glyphs;
+    glyphs = new GlyphCache(this, font, antiAlias);
+    synchronized (caches) {
+      GlyphCache other = caches.get(font);
+      if (other != null)
+        return other;
+      caches.put(font, glyphs);
+      return glyphs;
+    }
+  }
+  
+  private static void release(HashMap<Font, GlyphCache> caches) {
+    synchronized (caches) {
+      for (GlyphCache glyphs : caches.values())
+        glyphs.dispose();
+      caches.clear();
+    }
+  }
+  
+  /**
+   * Engine's private use. Get a sprite sheet, shared by the animations and
+   * tile sets of this manager. They render it through regions, so they never
+   * change its clipping rectangle.
+   */
+  Sprite sheet(String path) {
+    String key = "Sheet:" + path;
+    Sprite sheet = (Sprite)assets.get(key);
+    if (sheet != null)
+      return sheet;
+    // decoded without the lock, so other loads are not blocked meanwhile
+    sheet = newSprite(path);
+    Sprite other;
+    synchronized (assets) {
+      other = (Sprite)assets.get(key);
+      if (other == null) {
+        assets.put(key, sheet);
+        return sheet;
+      }
+    }
+    disposeSprite(sheet);
+    return other;
+  }
+  
+  private AssetFuture<?> next() {
+    synchronized (completed) {
+      return completed.poll();
+    }
+  }
+  
+  @SuppressWarnings("serial")
+  private static final class SynchronizedHashMap extends HashMap<String, Object> {
+    public synchronized Object get(Object key) {
+      return super.get(key);
+    }
+    
+    public synchronized Object put(String key, Object value) {
+      return super.put(key, value);
+    }
+    
+    public synchronized void putAll(java.util.Map<? extends String, ? extends Object> m) {
+      super.putAll(m);
+    }
+    
+    public synchronized Object remove(Object key) {
+      return super.remove(key);
+    }
+    
+    public synchronized boolean containsKey(Object key) {
+      return super.containsKey(key);
+    }
+    
+    public synchronized boolean containsValue(Object value) {
+      return super.containsValue(value);
+    }
+    
+    public synchronized int size() {
+      return super.size();
+    }
+    
+    public synchronized boolean isEmpty() {
+      return super.isEmpty();
+    }
+    
+    public synchronized void clear() {
+      super.clear();
+    }
+  }
 }
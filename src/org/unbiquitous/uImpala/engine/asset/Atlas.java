@@ -0,0 +1,135 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.util.HashMap;
+
+import org.unbiquitous.uImpala.engine.io.Screen;
+import org.unbiquitous.uImpala.util.Color;
+import org.unbiquitous.uImpala.util.Corner;
+
+/**
+ * Class to combine many images in a few large pages. Each image is rendered
+ * through a sprite that clips its region of a page, so rendering many images
+ * of the same page needs no texture switch.
+ * @see AssetManager#newAtlas(int, int, String...)
+ */
+public class Atlas {
+  /**
+   * Get the sprite of an image.
+   * @param path Image path, as passed to create the atlas.
+   * @return Sprite of the image, or null if the image is not in the atlas.
+   */
+  public Sprite getSprite(String path) {
+    return sprites.get(path);
+  }
+  
+  /**
+   * Get the number of pages.
+   * @return Number of pages. Zero if the platform cannot compose pages, in
+   * which case every image is rendered from its own sprite.
+   */
+  public int getPageCount() {
+    return pages.length;
+  }
+  
+  /**
+   * Get a page.
+   * @param page Page index.
+   * @return Sprite of the whole page.
+   */
+  public Sprite getPage(int page) {
+    return pages[page];
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final int PADDING = 1;
+  
+  private HashMap<String, Sprite> sprites = new HashMap<String, Sprite>();
+  private Sprite[] pages;
+  
+  /**
+   * Engine's private use.
+   */
+  protected Atlas(AssetManager assets, int pageWidth, int pageHeight, String... paths) {
+    // decoded only for their sizes, unless the platform cannot compose pages
+    Sprite[] images = new Sprite[paths.length];
+    int[] widths = new int[paths.length];
+    int[] heights = new int[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      images[i] = assets.newSprite(paths[i]);
+      widths[i] = images[i].getWidth();
+      heights[i] = images[i].getHeight();
+    }
+    
+    AtlasPacker packer = new AtlasPacker(pageWidth, pageHeight, PADDING);
+    pages = new Sprite[packer.pack(widths, heights)];
+    for (int p = 0; p < pages.length; p++) {
+      int count = 0;
+      for (int i = 0; i < paths.length; i++)
+        count += packer.getPage(i) == p ? 1 : 0;
+      String[] pagePaths = new String[count];
+      int[] xs = new int[count], ys = new int[count];
+      for (int i = 0, j = 0; i < paths.length; i++) {
+        if (packer.getPage(i) == p) {
+          pagePaths[j] = paths[i];
+          xs[j] = packer.getX(i);
+          ys[j++] = packer.getY(i);
+        }
+      }
+      pages[p] = assets.newAtlasPage(pageWidth, pageHeight, pagePaths, xs, ys);
+      if (pages[p] == null) {
+        // platform cannot compose pages
+        for (int q = 0; q < p; q++)
+          assets.disposeSprite(pages[q]);
+        pages = new Sprite[0];
+        for (int i = 0; i < paths.length; i++)
+          sprites.put(paths[i], images[i]);
+        return;
+      }
+    }
+    for (int i = 0; i < paths.length; i++) {
+      assets.disposeSprite(images[i]);
+      sprites.put(paths[i], new Region(
+        pages[packer.getPage(i)], packer.getX(i), packer.getY(i), widths[i], heights[i]
+      ));
+    }
+  }
+  
+  private static final class Region extends Sprite {
+    private Sprite page;
+    private int x, y, w, h;
+    private float clipX, clipY, clipW, clipH;
+    
+    private Region(Sprite page, int x, int y, int w, int h) {
+      this.page = page;
+      this.x = x;
+      this.y = y;
+      this.w = w;
+      this.h = h;
+      resetClip();
+    }
+    
+    public int getWidth() {
+      return w;
+    }
+    
+    public int getHeight() {
+      return h;
+    }
+    
+    public void render(Screen screen, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color) {
+      page.render(screen, this.x + clipX, this.y + clipY, clipW, clipH, x, y, corner, opacity, angle, scaleX, scaleY, color);
+    }
+    
+    public void resetClip() {
+      clip(0, 0, w, h);
+    }
+    
+    public void clip(float x, float y, float w, float h) {
+      clipX = Math.max(0, Math.min(x, this.w));
+      clipY = Math.max(0, Math.min(y, this.h));
+      clipW = Math.max(0, Math.min(w, this.w - clipX));
+      clipH = Math.max(0, Math.min(h, this.h - clipY));
+    }
+  }
+}
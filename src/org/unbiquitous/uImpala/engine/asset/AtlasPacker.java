@@ -0,0 +1,146 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Class to pack rectangles into as few pages as possible, using the maximal
+ * rectangles algorithm with best short side fit. Rectangles are not rotated.
+ * @see Atlas
+ */
+public final class AtlasPacker {
+  /**
+   * Constructor.
+   * @param pageWidth Width of each page.
+   * @param pageHeight Height of each page.
+   * @param padding Space left to the right of and below each rectangle.
+   */
+  public AtlasPacker(int pageWidth, int pageHeight, int padding) {
+    this.pageWidth = pageWidth;
+    this.pageHeight = pageHeight;
+    this.padding = padding;
+  }
+  
+  /**
+   * Packs rectangles. The largest are placed first.
+   * @param widths Width of each rectangle.
+   * @param heights Height of each rectangle.
+   * @return Number of pages used.
+   */
+  public int pack(final int[] widths, final int[] heights) {
+    int n = widths.length;
+    pages = new int[n];
+    xs = new int[n];
+    ys = new int[n];
+    free.clear();
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      if (widths[i] > pageWidth || heights[i] > pageHeight)
+        throw new Error("Rectangle " + widths[i] + "x" + heights[i] + " larger than page!");
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        int sa = Math.max(widths[a], heights[a]), sb = Math.max(widths[b], heights[b]);
+        if (sa != sb)
+          return sb - sa;
+        return widths[b]*heights[b] - widths[a]*heights[a];
+      }
+    });
+    for (Integer i : order)
+      place(i, Math.min(widths[i] + padding, pageWidth), Math.min(heights[i] + padding, pageHeight));
+    return free.size();
+  }
+  
+  /**
+   * @param i Index of a rectangle.
+   * @return Page of the rectangle.
+   */
+  public int getPage(int i) {
+    return pages[i];
+  }
+  
+  /**
+   * @param i Index of a rectangle.
+   * @return Coordinate x of the top-left corner of the rectangle.
+   */
+  public int getX(int i) {
+    return xs[i];
+  }
+  
+  /**
+   * @param i Index of a rectangle.
+   * @return Coordinate y of the top-left corner of the rectangle.
+   */
+  public int getY(int i) {
+    return ys[i];
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private int pageWidth, pageHeight, padding;
+  private int[] pages, xs, ys;
+  private ArrayList<ArrayList<int[]>> free = new ArrayList<ArrayList<int[]>>(); // {x, y, w, h}
+  
+  private void place(int i, int w, int h) {
+    int bestPage = -1, bestShort = Integer.MAX_VALUE, bestLong = Integer.MAX_VALUE;
+    int[] best = null;
+    for (int p = 0; p < free.size(); p++) {
+      for (int[] r : free.get(p)) {
+        if (r[2] < w || r[3] < h)
+          continue;
+        int dw = r[2] - w, dh = r[3] - h;
+        int s = Math.min(dw, dh), l = Math.max(dw, dh);
+        if (s < bestShort || (s == bestShort && l < bestLong)) {
+          bestPage = p;
+          best = r;
+          bestShort = s;
+          bestLong = l;
+        }
+      }
+    }
+    if (best == null) {
+      ArrayList<int[]> page = new ArrayList<int[]>();
+      page.add(new int[] {0, 0, pageWidth, pageHeight});
+      free.add(page);
+      bestPage = free.size() - 1;
+      best = page.get(0);
+    }
+    pages[i] = bestPage;
+    xs[i] = best[0];
+    ys[i] = best[1];
+    split(free.get(bestPage), best[0], best[1], w, h);
+  }
+  
+  private static void split(ArrayList<int[]> rects, int x, int y, int w, int h) {
+    ArrayList<int[]> added = new ArrayList<int[]>();
+    for (int k = rects.size() - 1; k >= 0; k--) {
+      int[] r = rects.get(k);
+      if (x >= r[0] + r[2] || x + w <= r[0] || y >= r[1] + r[3] || y + h <= r[1])
+        continue;
+      rects.remove(k);
+      if (x > r[0])
+        added.add(new int[] {r[0], r[1], x - r[0], r[3]});
+      if (x + w < r[0] + r[2])
+        added.add(new int[] {x + w, r[1], r[0] + r[2] - x - w, r[3]});
+      if (y > r[1])
+        added.add(new int[] {r[0], r[1], r[2], y - r[1]});
+      if (y + h < r[1] + r[3])
+        added.add(new int[] {r[0], y + h, r[2], r[1] + r[3] - y - h});
+    }
+    rects.addAll(added);
+    // discard free rectangles contained in others
+    for (int a = rects.size() - 1; a >= 0; a--) {
+      int[] ra = rects.get(a);
+      for (int b = 0; b < rects.size(); b++) {
+        int[] rb = rects.get(b);
+        if (a != b && ra[0] >= rb[0] && ra[1] >= rb[1] &&
+            ra[0] + ra[2] <= rb[0] + rb[2] && ra[1] + ra[3] <= rb[1] + rb[3]) {
+          rects.remove(a);
+          break;
+        }
+      }
+    }
+  }
+}
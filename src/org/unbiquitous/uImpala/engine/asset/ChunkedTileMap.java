@@ -0,0 +1,320 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map.Entry;
+
+import org.unbiquitous.uImpala.engine.io.Screen;
+
+/**
+ * Class to render a map too large to keep in memory. The map is split in
+ * square chunks of tiles, loaded by worker threads around a view and
+ * evicted, least recently viewed first, when more than a budget of chunks
+ * is resident. Rendering and queries only consult the resident chunks.
+ * @see AssetManager#newChunkedTileMap(ChunkedTileMap.Source, int, int, TileSet, int, int)
+ */
+public class ChunkedTileMap {
+  /**
+   * Interface to load the tiles of a chunk.
+   */
+  public static interface Source {
+    /**
+     * Loads a chunk. Called on a worker thread. If it throws, the chunk is
+     * requested again while still in view, and the exception is rethrown by
+     * the next update().
+     * @param row First row of the chunk.
+     * @param col First column of the chunk.
+     * @param rows Number of rows of the chunk.
+     * @param cols Number of columns of the chunk.
+     * @return Tiles of the chunk, rows*cols values in row-major order.
+     */
+    public int[] load(int row, int col, int rows, int cols);
+  }
+  
+  /**
+   * Value returned for the tiles not resident. Sources may use it as a
+   * tile too, so use isResident() to tell them apart.
+   */
+  public static final int UNLOADED = -1;
+  
+  /**
+   * Creates a source reading a logical map. Binary maps are read in place,
+   * so only the chunks resident take heap.
+   * @param map Logical map.
+   * @return Source of chunks.
+   */
+  public static Source source(final Map map) {
+    return new Source() {
+      public int[] load(int row, int col, int rows, int cols) {
+        int[] tiles = new int[rows*cols];
+        map.read(row, col, rows, cols, tiles, 0);
+        return tiles;
+      }
+    };
+  }
+  
+  /**
+   * Requests the chunks overlapping a view, plus a margin of one chunk, and
+   * marks them as the most recently viewed. Call once a frame.
+   * @throws Error If a source failed to load a chunk since the last call,
+   * caused by the exception thrown. The chunk is requested again by the
+   * next call.
+   * @param x Coordinate x of the top-left corner of the view, relative to
+   * the top-left corner of the map.
+   * @param y Coordinate y of the top-left corner of the view, relative to
+   * the top-left corner of the map.
+   * @param width View width.
+   * @param height View height.
+   */
+  public void update(float x, float y, float width, float height) {
+    Chunk failed = drop();
+    int chunkW = chunkSize*tileSet.tileWidth, chunkH = chunkSize*tileSet.tileHeight;
+    int firstRow = Math.max((int)Math.floor(y/chunkH) - 1, 0);
+    int firstCol = Math.max((int)Math.floor(x/chunkW) - 1, 0);
+    int lastRow = Math.min((int)Math.floor((y + height)/chunkH) + 1, chunkRows - 1);
+    int lastCol = Math.min((int)Math.floor((x + width)/chunkW) + 1, chunkCols - 1);
+    frame++;
+    for (int r = firstRow; r <= lastRow; r++) {
+      for (int c = firstCol; c <= lastCol; c++) {
+        Chunk chunk = chunk(r, c);
+        if (chunk == null)
+          chunk = request(r, c);
+        chunk.frame = frame;
+      }
+    }
+    evict();
+    if (failed != null) {
+      throw new Error("Problems while loading chunk at row " + failed.row +
+        ", column " + failed.col + ".", failed.error);
+    }
+  }
+  
+  /**
+   * Get value in map position.
+   * @param i Row.
+   * @param j Column.
+   * @return Value in map, or UNLOADED if its chunk is not resident.
+   * @see #isResident(int, int)
+   */
+  public int get(int i, int j) {
+    if (i < 0 || j < 0 || i >= rows || j >= cols)
+      return UNLOADED;
+    Chunk chunk = chunk(i/chunkSize, j/chunkSize);
+    if (chunk == null)
+      return UNLOADED;
+    int[] tiles = chunk.tiles;
+    if (tiles == null)
+      return UNLOADED;
+    return tiles[(i - chunk.row)*chunk.cols + j - chunk.col];
+  }
+  
+  /**
+   * Query if the chunk of a position is resident.
+   * @param i Row.
+   * @param j Column.
+   * @return True if resident.
+   */
+  public boolean isResident(int i, int j) {
+    if (i < 0 || j < 0 || i >= rows || j >= cols)
+      return false;
+    Chunk chunk = chunk(i/chunkSize, j/chunkSize);
+    return chunk != null && chunk.tiles != null;
+  }
+  
+  /**
+   * Render the tiles of the resident chunks inside the screen.
+   * @param screen Screen on which the map will be rendered.
+   * @param x Coordinate x of top-left corner of the map.
+   * @param y Coordinate y of top-left corner of the map.
+   */
+  public void render(Screen screen, float x, float y) {
+    render(screen, x, y, 0, 0, screen.getWidth(), screen.getHeight());
+  }
+  
+  /**
+   * Render the tiles of the resident chunks inside a rectangle of the
+   * screen.
+   * @param screen Screen on which the map will be rendered.
+   * @param x Coordinate x of top-left corner of the map.
+   * @param y Coordinate y of top-left corner of the map.
+   * @param viewX Coordinate x of top-left corner of the rectangle.
+   * @param viewY Coordinate y of top-left corner of the rectangle.
+   * @param viewW Rectangle width.
+   * @param viewH Rectangle height.
+   */
+  public void render(Screen screen, float x, float y, float viewX, float viewY, float viewW, float viewH) {
+    int tw = tileSet.tileWidth, th = tileSet.tileHeight;
+    int firstRow = (int)Math.floor((viewY - y)/th), firstCol = (int)Math.floor((viewX - x)/tw);
+    int lastRow = (int)Math.ceil((viewY + viewH - y)/th) - 1, lastCol = (int)Math.ceil((viewX + viewW - x)/tw) - 1;
+    for (Chunk chunk : chunks.values()) {
+      int[] tiles = chunk.tiles;
+      if (tiles == null)
+        continue;
+      int i0 = Math.max(firstRow - chunk.row, 0), i1 = Math.min(lastRow - chunk.row, chunk.rows - 1);
+      int j0 = Math.max(firstCol - chunk.col, 0), j1 = Math.min(lastCol - chunk.col, chunk.cols - 1);
+      for (int i = i0; i <= i1; i++) {
+        for (int j = j0; j <= j1; j++) {
+          int tileID = tiles[i*chunk.cols + j];
+          if (tileID != 0)
+            tileSet.render(tileID - 1, screen, x + (chunk.col + j)*tw, y + (chunk.row + i)*th);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Gets row amount.
+   * @return Number of rows.
+   */
+  public int getRows() {
+    return rows;
+  }
+  
+  /**
+   * Gets column amount.
+   * @return Number of columns.
+   */
+  public int getCols() {
+    return cols;
+  }
+  
+  /**
+   * Get the number of rows and columns of each chunk.
+   * @return Chunk size, in tiles.
+   */
+  public int getChunkSize() {
+    return chunkSize;
+  }
+  
+  /**
+   * Get the number of chunks resident or being loaded.
+   * @return Number of chunks.
+   */
+  public int getResidentChunks() {
+    return chunks.size();
+  }
+  
+  /**
+   * Get the tile set used to render tiles.
+   * @return TileSet used to render tiles.
+   */
+  public TileSet getTileSet() {
+    return tileSet;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final class Chunk {
+    private int row, col, rows, cols;
+    private volatile int[] tiles = null;
+    private Throwable error = null;
+    private long frame;
+  }
+  
+  private Source source;
+  private TileSet tileSet;
+  private int rows, cols, chunkSize, chunkRows, chunkCols, maxChunks;
+  private long frame = 0;
+  private HashMap<Long, Chunk> chunks = new HashMap<Long, Chunk>();
+  private Chunk last = null;
+  private LinkedList<Chunk> failed = new LinkedList<Chunk>();
+  
+  /**
+   * Constructor.
+   * @param source Source of the chunks.
+   * @param rows Number of rows of the whole map.
+   * @param cols Number of columns of the whole map.
+   * @param tileSet TileSet to render each tile.
+   * @param chunkSize Number of rows and columns of each chunk.
+   * @param maxChunks Number of chunks to keep resident. More are kept while
+   * needed to cover the view.
+   */
+  protected ChunkedTileMap(Source source, int rows, int cols, TileSet tileSet, int chunkSize, int maxChunks) {
+    this.source = source;
+    this.rows = rows;
+    this.cols = cols;
+    this.tileSet = tileSet;
+    this.chunkSize = chunkSize;
+    this.maxChunks = maxChunks;
+    chunkRows = (rows + chunkSize - 1)/chunkSize;
+    chunkCols = (cols + chunkSize - 1)/chunkSize;
+  }
+  
+  private static Long key(int chunkRow, int chunkCol) {
+    return Long.valueOf(((long)chunkRow << 32) | (chunkCol & 0xFFFFFFFFL));
+  }
+  
+  private Chunk chunk(int chunkRow, int chunkCol) {
+    // queries tend to hit the same chunk repeatedly
+    Chunk tmp = last;
+    if (tmp != null && tmp.row == chunkRow*chunkSize && tmp.col == chunkCol*chunkSize)
+      return tmp;
+    tmp = chunks.get(key(chunkRow, chunkCol));
+    if (tmp != null)
+      last = tmp;
+    return tmp;
+  }
+  
+  private Chunk request(int chunkRow, int chunkCol) {
+    final Chunk chunk = new Chunk();
+    chunk.row = chunkRow*chunkSize;
+    chunk.col = chunkCol*chunkSize;
+    chunk.rows = Math.min(chunkSize, rows - chunk.row);
+    chunk.cols = Math.min(chunkSize, cols - chunk.col);
+    chunks.put(key(chunkRow, chunkCol), chunk);
+    AssetManager.execute(new Runnable() {
+      public void run() {
+        try {
+          chunk.tiles = source.load(chunk.row, chunk.col, chunk.rows, chunk.cols);
+        } catch (Throwable t) {
+          synchronized (failed) {
+            chunk.error = t;
+            failed.add(chunk);
+          }
+        }
+      }
+    });
+    return chunk;
+  }
+  
+  /**
+   * Removes the chunks whose load failed, so they are requested again.
+   * @return The first chunk removed, or null if none.
+   */
+  private Chunk drop() {
+    Chunk first = null;
+    synchronized (failed) {
+      while (failed.size() > 0) {
+        Chunk chunk = failed.removeFirst();
+        Long key = key(chunk.row/chunkSize, chunk.col/chunkSize);
+        if (chunks.get(key) == chunk && chunks.remove(key) == last)
+          last = null;
+        if (first == null)
+          first = chunk;
+      }
+    }
+    return first;
+  }
+  
+  /**
+   * Evicts the least recently viewed chunks not in view, including those
+   * still loading.
+   */
+  private void evict() {
+    while (chunks.size() > maxChunks) {
+      Long oldest = null;
+      long oldestFrame = frame;
+      for (Entry<Long, Chunk> entry : chunks.entrySet()) {
+        Chunk chunk = entry.getValue();
+        if (chunk.frame < oldestFrame) {
+          oldest = entry.getKey();
+          oldestFrame = chunk.frame;
+        }
+      }
+      if (oldest == null)
+        return;
+      if (chunks.remove(oldest) == last)
+        last = null;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Class to rasterize each glyph of a font once, into pages of an atlas, and
+ * to cache the layout of the strings used recently.
+ * @see GlyphText
+ */
+final class GlyphCache {
+  /**
+   * Glyph rasterized in a page.
+   */
+  static final class Glyph {
+    final int page, x, y, width, height;
+    final int offsetX, offsetY;           // from the pen, on the baseline
+    final float advance;
+  
+    private Glyph(int page, int x, int y, int width, int height, int offsetX, int offsetY, float advance) {
+      this.page = page;
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      this.offsetX = offsetX;
+      this.offsetY = offsetY;
+      this.advance = advance;
+    }
+  }
+  
+  /**
+   * Positions of the glyphs of a string, relative to the top-left corner of
+   * its rectangle. Immutable.
+   */
+  static final class Layout {
+    final Glyph[] glyphs;
+    final float[] xs, ys;
+    final int width, height;
+  
+    private Layout(Glyph[] glyphs, float[] xs, float[] ys, int width, int height) {
+      this.glyphs = glyphs;
+      this.xs = xs;
+      this.ys = ys;
+      this.width = width;
+      this.height = height;
+    }
+  }
+  
+  static final int PAGE_SIZE = 512;
+  static final int MAX_LAYOUTS = 256;
+  
+  GlyphCache(AssetManager assets, Font font, boolean antiAlias) {
+    this.assets = assets;
+    this.font = font;
+    this.antiAlias = antiAlias;
+    frc = new FontRenderContext(null, antiAlias, true);
+    LineMetrics metrics = font.getLineMetrics("Mg", frc);
+    ascent = metrics.getAscent();
+    descent = metrics.getDescent();
+  }
+  
+  /**
+   * Creates the first page.
+   * @return False if the platform cannot create sprites from images.
+   */
+  synchronized boolean isSupported() {
+    if (images.isEmpty())
+      newPage();
+    return page(0) != null;
+  }
+  
+  /**
+   * Get the layout of a string, laying it out if not cached.
+   */
+  synchronized Layout layout(String text) {
+    Layout layout = layouts.get(text);
+    if (layout != null)
+      return layout;
+    int count = text.codePointCount(0, text.length());
+    Glyph[] gs = new Glyph[count];
+    float[] xs = new float[count], ys = new float[count];
+    float pen = 0;
+    for (int i = 0, k = 0; i < text.length(); k++) {
+      int codePoint = text.codePointAt(i);
+      i += Character.charCount(codePoint);
+      Glyph g = glyph(codePoint);
+      gs[k] = g;
+      xs[k] = pen + g.offsetX;
+      ys[k] = ascent + g.offsetY;
+      pen += g.advance;
+    }
+    layout = new Layout(gs, xs, ys, (int)Math.ceil(pen), (int)Math.ceil(ascent + descent));
+    layouts.put(text, layout);
+    return layout;
+  }
+  
+  /**
+   * Get the sprite of a page, updated with the glyphs rasterized since the
+   * last call. The sprite it replaces is disposed.
+   */
+  synchronized Sprite page(int page) {
+    if (dirty.get(page)) {
+      Sprite old = pages.set(page, assets.newSprite(images.get(page)));
+      if (old != null)
+        assets.disposeSprite(old);
+      dirty.set(page, false);
+    }
+    return pages.get(page);
+  }
+  
+  /**
+   * Disposes the sprites of the pages, which are created again if rendered.
+   */
+  synchronized void dispose() {
+    for (int p = 0; p < pages.size(); p++) {
+      Sprite page = pages.set(p, null);
+      if (page != null)
+        assets.disposeSprite(page);
+      dirty.set(p, true);
+    }
+  }
+  
+  /**
+   * Estimate of the heap used, in bytes.
+   */
+  synchronized long size() {
+    return (long)images.size()*PAGE_SIZE*PAGE_SIZE*4;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private AssetManager assets;
+  private Font font;
+  private FontRenderContext frc;
+  private boolean antiAlias;
+  private float ascent, descent;
+  private HashMap<Integer, Glyph> glyphs = new HashMap<Integer, Glyph>();
+  private ArrayList<BufferedImage> images = new ArrayList<BufferedImage>();
+  private ArrayList<Sprite> pages = new ArrayList<Sprite>();
+  private ArrayList<Boolean> dirty = new ArrayList<Boolean>();
+  private int shelfX = 0, shelfY = 0, shelfHeight = 0;
+  private LinkedHashMap<String, Layout> layouts = new LinkedHashMap<String, Layout>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+  
+    protected boolean removeEldestEntry(Entry<String, Layout> eldest) {
+      return size() > MAX_LAYOUTS;
+    }
+  };
+  
+  private Glyph glyph(int codePoint) {
+    Glyph g = glyphs.get(codePoint);
+    if (g != null)
+      return g;
+    GlyphVector gv = font.createGlyphVector(frc, new String(Character.toChars(codePoint)));
+    Rectangle bounds = gv.getPixelBounds(frc, 0, 0);
+    float advance = gv.getGlyphMetrics(0).getAdvanceX();
+    int w = Math.min(bounds.width, PAGE_SIZE - 1), h = Math.min(bounds.height, PAGE_SIZE - 1);
+    // shelf packing, one pixel apart
+    if (images.isEmpty())
+      newPage();
+    if (shelfX + w + 1 > PAGE_SIZE) {
+      shelfX = 0;
+      shelfY += shelfHeight + 1;
+      shelfHeight = 0;
+    }
+    if (shelfY + h + 1 > PAGE_SIZE)
+      newPage();
+    int page = images.size() - 1;
+    if (w > 0 && h > 0) {
+      Graphics2D g2d = images.get(page).createGraphics();
+      g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, antiAlias ?
+        RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+      g2d.setColor(Color.WHITE);
+      g2d.drawGlyphVector(gv, shelfX - bounds.x, shelfY - bounds.y);
+      g2d.dispose();
+      dirty.set(page, true);
+    }
+    g = new Glyph(page, shelfX, shelfY, w, h, bounds.x, bounds.y, advance);
+    shelfX += w + 1;
+    shelfHeight = Math.max(shelfHeight, h);
+    glyphs.put(codePoint, g);
+    return g;
+  }
+  
+  private void newPage() {
+    images.add(new BufferedImage(PAGE_SIZE, PAGE_SIZE, BufferedImage.TYPE_INT_ARGB));
+    pages.add(null);
+    dirty.add(true);
+    shelfX = shelfY = shelfHeight = 0;
+  }
+}
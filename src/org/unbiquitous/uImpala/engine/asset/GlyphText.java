@@ -0,0 +1,96 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.awt.Font;
+
+import org.unbiquitous.uImpala.engine.io.Screen;
+import org.unbiquitous.uImpala.util.Color;
+import org.unbiquitous.uImpala.util.Corner;
+
+/**
+ * Class to render text from glyphs rasterized once per font, style and size
+ * into an atlas. Changing the text only lays it out, and the layouts of the
+ * strings used recently are cached, so text changed every frame (scores,
+ * timers) costs no rasterization.
+ * @see AssetManager#newGlyphText(Font, boolean, String)
+ */
+public class GlyphText extends Text {
+  public void setText(String text) {
+    this.text = text == null ? "" : text;
+    layout = glyphs.layout(this.text);
+  }
+  
+  public int getWidth() {
+    return layout.width;
+  }
+  
+  public int getHeight() {
+    return layout.height;
+  }
+  
+  public void render(Screen screen, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color) {
+    GlyphCache.Layout l = layout;
+    float w = l.width*scaleX, h = l.height*scaleY;
+    float left = x, top = y;
+    if (corner == null || corner == Corner.CENTER) {
+      left -= w/2;
+      top -= h/2;
+    }
+    else {
+      if (corner == Corner.TOP_RIGHT || corner == Corner.BOTTOM_RIGHT)
+        left -= w;
+      if (corner == Corner.BOTTOM_LEFT || corner == Corner.BOTTOM_RIGHT)
+        top -= h;
+    }
+    double rad = Math.toRadians(angle);
+    float cos = (float)Math.cos(rad), sin = (float)Math.sin(rad);
+    for (int i = 0; i < l.glyphs.length; i++) {
+      GlyphCache.Glyph g = l.glyphs[i];
+      if (g.width == 0 || g.height == 0)
+        continue;
+      // center of the glyph, rotated around the point given
+      float dx = left + (l.xs[i] + g.width/2.0f)*scaleX - x;
+      float dy = top + (l.ys[i] + g.height/2.0f)*scaleY - y;
+      glyphs.page(g.page).render(screen, g.x, g.y, g.width, g.height,
+        x + dx*cos - dy*sin, y + dx*sin + dy*cos, Corner.CENTER, opacity, angle, scaleX, scaleY, color);
+    }
+  }
+  
+  public void options(Integer style, Float size, Boolean antiAlias) {
+    if (style != null)
+      font = font.deriveFont(style.intValue());
+    if (size != null)
+      font = font.deriveFont(size.floatValue());
+    if (antiAlias != null)
+      this.antiAlias = antiAlias;
+    glyphs = assets.glyphs(font, this.antiAlias);
+    layout = glyphs.layout(text);
+  }
+  
+  /**
+   * Get the font.
+   * @return Font used.
+   */
+  public Font getFont() {
+    return font;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private AssetManager assets;
+  private Font font;
+  private boolean antiAlias;
+  private String text = "";
+  private GlyphCache glyphs;
+  private GlyphCache.Layout layout;
+  
+  /**
+   * Engine's private use.
+   */
+  GlyphText(AssetManager assets, GlyphCache glyphs, Font font, boolean antiAlias, String text) {
+    this.assets = assets;
+    this.glyphs = glyphs;
+    this.font = font;
+    this.antiAlias = antiAlias;
+    setText(text);
+  }
+}
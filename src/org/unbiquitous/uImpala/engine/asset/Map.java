@@ -2,19 +2,57 @@ package org.unbiquitous.uImpala.engine.asset;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Scanner;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
- * Class to load map from text file. Objects of this class are read-only.
+ * Class to load map from text file, or from binary file. Maps loaded from
+ * files are read-only, and may be shared among game scenes. The values are
+ * stored in a flat array with the fewest bits able to hold them (1, 2, 4, 8,
+ * 16 or 32 bits each). Regions are exposed as views sharing the storage.
+ * <p>
+ * The binary format starts with a header of 16 bytes, all numbers big
+ * endian: the magic number 0x554D4150 ("UMAP"), the format version (1 byte),
+ * the number of bits per value (1 byte: 1, 2, 4, 8, 16 or 32), the flags
+ * (1 byte, bit 0 means the values are deflated), a reserved byte, the number
+ * of rows (4 bytes) and the number of columns (4 bytes). The values follow in
+ * row-major order, packed from the least significant bits of each byte for
+ * less than 8 bits per value. Uncompressed binary maps are mapped in memory
+ * and read in place.
+ * @see MapConverter
  * @author Pimenta
  *
  */
 public class Map {
   /**
-   * Loads map from text file.
+   * Interface to visit the values of a map in row-major order.
+   */
+  public static interface Visitor {
+    /**
+     * Called for each position.
+     * @param i Row.
+     * @param j Column.
+     * @param value Value in map.
+     */
+    public void visit(int i, int j, int value);
+  }
+  
+  /**
+   * Loads map from text or binary file, detected by the magic number.
    * @param path File path.
    */
   protected Map(String path) {
+    readOnly = true;
+    if (isBinary(path)) {
+      loadBinary(path);
+      return;
+    }
+    
     Scanner sc;
     try {
       sc = new Scanner(new FileReader(path));
@@ -25,13 +63,29 @@ public class Map {
     rows = sc.nextInt();
     cols = sc.nextInt();
     sc.nextLine();
-    map = new int[rows][cols];
+    int[] values = new int[rows*cols];
     for (int i = 0; i < rows; i++) {
       for (int j = 0; j < cols; j++)
-        map[i][j] = sc.nextInt();
+        values[i*cols + j] = sc.nextInt();
       sc.nextLine();
     }
     sc.close();
+    stride = cols;
+    storage = new Storage(values.length, bits(values, 0, values.length));
+    for (int k = 0; k < values.length; k++)
+      storage.set(k, values[k]);
+  }
+  
+  /**
+   * Creates an empty writable map.
+   * @param rows Number of rows.
+   * @param cols Number of columns.
+   */
+  public Map(int rows, int cols) {
+    this.rows = rows;
+    this.cols = cols;
+    stride = cols;
+    storage = new Storage(rows*cols, 1);
   }
   
   /**
@@ -41,7 +95,119 @@ public class Map {
    * @return Value in map.
    */
   public int get(int i, int j) {
-    return map[i][j];
+    checkRegion(i, j, 1, 1);
+    return storage.get((rowOffset + i)*stride + colOffset + j);
+  }
+  
+  /**
+   * Set value in map position. The storage grows to more bits per value if
+   * needed.
+   * @param i Row.
+   * @param j Column.
+   * @param value Value.
+   */
+  public void set(int i, int j, int value) {
+    checkWritable();
+    checkRegion(i, j, 1, 1);
+    storage.fit(bits(value));
+    storage.set((rowOffset + i)*stride + colOffset + j, value);
+    storage.changed(rowOffset + i, colOffset + j, 1, 1);
+  }
+  
+  /**
+   * Copies the values of a region to an array.
+   * @param row First row of the region.
+   * @param col First column of the region.
+   * @param rows Number of rows of the region.
+   * @param cols Number of columns of the region.
+   * @param dst Destination, filled in row-major order.
+   * @param offset Index in dst of the first value.
+   */
+  public void read(int row, int col, int rows, int cols, int[] dst, int offset) {
+    checkRegion(row, col, rows, cols);
+    for (int i = 0; i < rows; i++) {
+      int index = (rowOffset + row + i)*stride + colOffset + col;
+      for (int j = 0; j < cols; j++)
+        dst[offset++] = storage.get(index++);
+    }
+  }
+  
+  /**
+   * Copies the values of an array to a region.
+   * @param row First row of the region.
+   * @param col First column of the region.
+   * @param rows Number of rows of the region.
+   * @param cols Number of columns of the region.
+   * @param src Source, in row-major order.
+   * @param offset Index in src of the first value.
+   */
+  public void write(int row, int col, int rows, int cols, int[] src, int offset) {
+    checkWritable();
+    checkRegion(row, col, rows, cols);
+    storage.fit(bits(src, offset, rows*cols));
+    for (int i = 0; i < rows; i++) {
+      int index = (rowOffset + row + i)*stride + colOffset + col;
+      for (int j = 0; j < cols; j++)
+        storage.set(index++, src[offset++]);
+    }
+    storage.changed(rowOffset + row, colOffset + col, rows, cols);
+  }
+  
+  /**
+   * Visits every value in row-major order.
+   * @param visitor Visitor.
+   */
+  public void visit(Visitor visitor) {
+    for (int i = 0; i < rows; i++) {
+      int index = (rowOffset + i)*stride + colOffset;
+      for (int j = 0; j < cols; j++)
+        visitor.visit(i, j, storage.get(index++));
+    }
+  }
+  
+  /**
+   * Get a read-only view of a region, sharing the values with this map.
+   * Changes to this map are seen through the view.
+   * @param row First row of the region.
+   * @param col First column of the region.
+   * @param rows Number of rows of the region.
+   * @param cols Number of columns of the region.
+   * @return View of the region.
+   */
+  public Map view(int row, int col, int rows, int cols) {
+    checkRegion(row, col, rows, cols);
+    return new Map(this, rowOffset + row, colOffset + col, rows, cols);
+  }
+  
+  /**
+   * Get a read-only view of the whole map, sharing the values with it.
+   * @return View of the map.
+   */
+  public Map view() {
+    return readOnly ? this : view(0, 0, rows, cols);
+  }
+  
+  /**
+   * Get a writable copy of the map, using as many bits per value.
+   * @return New map.
+   */
+  public Map copy() {
+    Map tmp = new Map(rows, cols);
+    tmp.storage = new Storage(rows*cols, storage.bits);
+    for (int i = 0, k = 0; i < rows; i++) {
+      int index = (rowOffset + i)*stride + colOffset;
+      for (int j = 0; j < cols; j++)
+        tmp.storage.set(k++, storage.get(index++));
+    }
+    return tmp;
+  }
+  
+  /**
+   * Query if the map can be changed.
+   * @return True if read-only.
+   */
+  public boolean isReadOnly() {
+    return readOnly;
   }
   
   /**
@@ -61,18 +227,248 @@ public class Map {
   }
   
   /**
-   * Gets a copy of the internal map.
+   * Get the number of bits used to store each value.
+   * @return 1, 2, 4, 8, 16 or 32.
+   */
+  public int getBits() {
+    return storage.bits;
+  }
+  
+  /**
+   * Gets a copy of the internal map. Prefer get(), read(), visit() or
+   * view(), which do not copy.
    * @return New bidimensional array copied from the internal map.
    */
   public int[][] copyInternalMap() {
     int[][] tmp = new int[rows][cols];
-    for (int i = 0; i < rows; i++) {
-      for (int j = 0; j < cols; j++)
-        tmp[i][j] = map[i][j];
-    }
+    for (int i = 0; i < rows; i++)
+      read(i, 0, 1, cols, tmp[i], 0);
     return tmp;
   }
   
-  protected int[][] map;
   protected int rows, cols;
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  static final int MAGIC = 0x554D4150, VERSION = 1, HEADER = 16;
+  static final int FLAG_DEFLATE = 1;
+  
+  /**
+   * Number of writes remembered by changes().
+   */
+  static final int CHANGES = 64;
+  
+  /**
+   * Values packed in row-major order, starting at the byte HEADER, so binary
+   * files can be used in place.
+   */
+  private static final class Storage {
+    private ByteBuffer data;
+    private int bits;
+    private int[] changes = null;
+    private long changeCount = 0;
+    
+    private Storage(int count, int bits) {
+      this(ByteBuffer.allocate(HEADER + (int)(((long)count*bits + 7)/8)), bits);
+    }
+    
+    private Storage(ByteBuffer data, int bits) {
+      this.data = data;
+      this.bits = bits;
+    }
+    
+    private int get(int index) {
+      switch (bits) {
+        case 32: return data.getInt(HEADER + 4*index);
+        case 16: return data.getShort(HEADER + 2*index) & 0xFFFF;
+        case 8:  return data.get(HEADER + index) & 0xFF;
+        default:
+          int bit = index*bits;
+          return (data.get(HEADER + (bit >>> 3)) >>> (bit & 7)) & ((1 << bits) - 1);
+      }
+    }
+    
+    private void set(int index, int value) {
+      switch (bits) {
+        case 32: data.putInt(HEADER + 4*index, value); break;
+        case 16: data.putShort(HEADER + 2*index, (short)value); break;
+        case 8:  data.put(HEADER + index, (byte)value); break;
+        default:
+          int bit = index*bits, pos = HEADER + (bit >>> 3), mask = ((1 << bits) - 1) << (bit & 7);
+          data.put(pos, (byte)((data.get(pos) & ~mask) | ((value << (bit & 7)) & mask)));
+      }
+    }
+    
+    /**
+     * Remembers a region written, in rows and columns of the whole storage.
+     */
+    private void changed(int row, int col, int rows, int cols) {
+      if (changes == null)
+        changes = new int[4*CHANGES];
+      int k = 4*(int)(changeCount++ % CHANGES);
+      changes[k] = row;
+      changes[k + 1] = col;
+      changes[k + 2] = rows;
+      changes[k + 3] = cols;
+    }
+    
+    /**
+     * Grows to store values of a number of bits.
+     */
+    private void fit(int needed) {
+      if (needed <= bits)
+        return;
+      int count = (int)((long)(data.capacity() - HEADER)*8/bits);
+      Storage tmp = new Storage(count, needed);
+      for (int k = 0; k < count; k++)
+        tmp.set(k, get(k));
+      data = tmp.data;
+      bits = needed;
+    }
+  }
+  
+  private Storage storage;
+  private int stride, rowOffset = 0, colOffset = 0;
+  private boolean readOnly = false;
+  
+  private Map(Map map, int rowOffset, int colOffset, int rows, int cols) {
+    this.storage = map.storage;
+    this.stride = map.stride;
+    this.rowOffset = rowOffset;
+    this.colOffset = colOffset;
+    this.rows = rows;
+    this.cols = cols;
+    readOnly = true;
+  }
+  
+  private void checkWritable() {
+    if (readOnly)
+      throw new Error("Map is read-only!");
+  }
+  
+  private void checkRegion(int row, int col, int rows, int cols) {
+    if (row < 0 || col < 0 || row + rows > this.rows || col + cols > this.cols)
+      throw new Error("Region out of map!");
+  }
+  
+  /**
+   * Fewest bits able to hold a non-negative value, 32 for negative values.
+   */
+  private static int bits(int value) {
+    if (value < 0)
+      return 32;
+    int bits = 1;
+    while (bits < 32 && (value >>> bits) != 0)
+      bits <<= 1;
+    return bits;
+  }
+  
+  private static int bits(int[] values, int offset, int count) {
+    int max = 0;
+    for (int k = offset; k < offset + count; k++) {
+      if (values[k] < 0)
+        return 32;
+      max = Math.max(max, values[k]);
+    }
+    return bits(max);
+  }
+  
+  /**
+   * Engine's private use. Get the number of writes to the values of this
+   * map, including the writes through other maps sharing them.
+   * @return Number of writes.
+   */
+  long changes() {
+    return storage.changeCount;
+  }
+  
+  /**
+   * Engine's private use. Get the region of a write, relative to this map.
+   * Only the last CHANGES writes are remembered.
+   * @param change Index of the write, in [changes() - CHANGES, changes()).
+   * @param region Filled with the first row, first column, number of rows
+   * and number of columns of the region. May be outside this map.
+   */
+  void change(long change, int[] region) {
+    int k = 4*(int)(change % CHANGES);
+    region[0] = storage.changes[k] - rowOffset;
+    region[1] = storage.changes[k + 1] - colOffset;
+    region[2] = storage.changes[k + 2];
+    region[3] = storage.changes[k + 3];
+  }
+  
+  /**
+   * Engine's private use.
+   * @return Estimate of the heap used, in bytes.
+   */
+  long size() {
+    return storage.data.isDirect() ? HEADER : storage.data.capacity();
+  }
+  
+  private static boolean isBinary(String path) {
+    try {
+      RandomAccessFile file = new RandomAccessFile(path, "r");
+      try {
+        return file.length() >= HEADER && file.readInt() == MAGIC;
+      } finally {
+        file.close();
+      }
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+  
+  private void loadBinary(String path) {
+    try {
+      RandomAccessFile file = new RandomAccessFile(path, "r");
+      try {
+        FileChannel channel = file.getChannel();
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+        if (header.get(4) != VERSION)
+          throw new Error("Unsupported map version " + header.get(4) + " in " + path);
+        int bits = header.get(5);
+        if (bits != 1 && bits != 2 && bits != 4 && bits != 8 && bits != 16 && bits != 32)
+          throw new Error("Invalid bits per value " + bits + " in " + path);
+        int flags = header.get(6);
+        rows = header.getInt(8);
+        cols = header.getInt(12);
+        stride = cols;
+        long length = HEADER + ((long)rows*cols*bits + 7)/8;
+        if ((flags & FLAG_DEFLATE) == 0) {
+          if (channel.size() < length)
+            throw new Error("Truncated map " + path);
+          storage = new Storage(channel.map(FileChannel.MapMode.READ_ONLY, 0, length), bits);
+        }
+        else {
+          ByteBuffer deflated = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, channel.size() - HEADER);
+          byte[] input = new byte[deflated.remaining()];
+          deflated.get(input);
+          byte[] output = new byte[(int)length];
+          Inflater inflater = new Inflater();
+          inflater.setInput(input);
+          try {
+            int offset = HEADER;
+            while (offset < output.length && !inflater.finished()) {
+              int n = inflater.inflate(output, offset, output.length - offset);
+              if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                throw new Error("Truncated map " + path);
+              offset += n;
+            }
+            // the stream may also end before the values do
+            if (offset != output.length)
+              throw new Error("Truncated map " + path);
+          } finally {
+            inflater.end();
+          }
+          storage = new Storage(ByteBuffer.wrap(output), bits);
+        }
+      } finally {
+        file.close();
+      }
+    } catch (IOException e) {
+      throw new Error(e);
+    } catch (DataFormatException e) {
+      throw new Error(e);
+    }
+  }
 }
@@ -0,0 +1,124 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Class to convert maps from text files to the binary format.
+ * Usage: java org.unbiquitous.uImpala.engine.asset.MapConverter [-z] in out
+ * @see Map
+ */
+public final class MapConverter {
+  /**
+   * Converts a map from the command line.
+   * @param args Optional -z to deflate, then the input and output paths.
+   */
+  public static void main(String[] args) {
+    boolean deflate = args.length == 3 && args[0].equals("-z");
+    if (args.length != (deflate ? 3 : 2)) {
+      System.err.println("Usage: MapConverter [-z] input.csv output.umap");
+      System.exit(1);
+    }
+    convert(args[args.length - 2], args[args.length - 1], deflate);
+  }
+  
+  /**
+   * Converts a map to the binary format, using the fewest bits per value
+   * able to represent every value.
+   * @param input Path of the map, in text or binary format.
+   * @param output Path of the binary map to write.
+   * @param deflate Pass true to compress the values. Compressed maps are
+   * smaller, but are inflated into the heap instead of read in place.
+   */
+  public static void convert(String input, String output, boolean deflate) {
+    write(new Map(input), output, deflate);
+  }
+  
+  /**
+   * Writes a map in the binary format.
+   * @param map Map to write.
+   * @param output Path of the binary map to write.
+   * @param deflate Pass true to compress the values.
+   */
+  public static void write(Map map, String output, boolean deflate) {
+    int rows = map.getRows(), cols = map.getCols();
+    int bits = bits(map);
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+      try {
+        out.writeInt(Map.MAGIC);
+        out.writeByte(Map.VERSION);
+        out.writeByte(bits);
+        out.writeByte(deflate ? Map.FLAG_DEFLATE : 0);
+        out.writeByte(0);
+        out.writeInt(rows);
+        out.writeInt(cols);
+        out.flush();
+        
+        Deflater deflater = null;
+        OutputStream values = out;
+        if (deflate) {
+          deflater = new Deflater(Deflater.BEST_COMPRESSION);
+          values = new DeflaterOutputStream(out, deflater);
+        }
+        DataOutputStream data = new DataOutputStream(values);
+        int packed = 0, used = 0;
+        for (int i = 0; i < rows; i++) {
+          for (int j = 0; j < cols; j++) {
+            int value = map.get(i, j);
+            switch (bits) {
+              case 32: data.writeInt(value); break;
+              case 16: data.writeShort(value); break;
+              case 8:  data.writeByte(value); break;
+              default:
+                packed |= value << used;
+                used += bits;
+                if (used == 8) {
+                  data.writeByte(packed);
+                  packed = used = 0;
+                }
+            }
+          }
+        }
+        if (used > 0)
+          data.writeByte(packed);
+        data.flush();
+        if (deflater != null) {
+          ((DeflaterOutputStream)values).finish();
+          deflater.end();
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private MapConverter() {
+    
+  }
+  
+  private static int bits(Map map) {
+    int max = 0;
+    for (int i = 0; i < map.getRows(); i++) {
+      for (int j = 0; j < map.getCols(); j++) {
+        int value = map.get(i, j);
+        if (value < 0)
+          return 32;
+        max = Math.max(max, value);
+      }
+    }
+    int bits = 1;
+    while (bits < 32 && (max >>> bits) != 0)
+      bits <<= 1;
+    return bits;
+  }
+}
@@ -95,6 +95,49 @@ public abstract class Sprite {
    */
   public abstract void render(Screen screen, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color);
   
+  /**
+   * Render a rectangle of the image. The default implementation sets the
+   * clipping rectangle, renders and resets the clipping rectangle to the
+   * whole image atomically, so a clipping rectangle set before with clip()
+   * is lost. Platforms able to render a source rectangle directly should
+   * override, leaving the clipping rectangle unchanged.
+   * @param screen Screen on which the image will be rendered.
+   * @param rx Coordinate x of the rectangle origin in the image.
+   * @param ry Coordinate y of the rectangle origin in the image.
+   * @param rw Rectangle width.
+   * @param rh Rectangle height.
+   * @param x Coordinate x of the corner of the rectangle on the screen.
+   * @param y Coordinate y of the corner of the rectangle on the screen.
+   * @param corner Corner of the rectangle. Null is considered Corner.CENTER.
+   * @param opacity The opacity. 1.0f means opaque, 0.0f means transparent.
+   * @param angle Angle of rotation in degrees.
+   * @param scaleX Scale the image in the horizontal axis. 1.0f means original size.
+   * @param scaleY Scale the image in the vertical axis. 1.0f means original size.
+   * @param color Color to multiply texture pixels.
+   */
+  public void render(Screen screen, float rx, float ry, float rw, float rh, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color) {
+    synchronized (this) {
+      clip(rx, ry, rw, rh);
+      try {
+        render(screen, x, y, corner, opacity, angle, scaleX, scaleY, color);
+      } finally {
+        resetClip();
+      }
+    }
+  }
+  
+  /**
+   * Get a region of the image.
+   * @param x Coordinate x of rectangle origin.
+   * @param y Coordinate y of rectangle origin.
+   * @param w Rectangle width.
+   * @param h Rectangle height.
+   * @return Immutable view of the rectangle.
+   */
+  public SpriteRegion region(float x, float y, float w, float h) {
+    return new SpriteRegion(this, x, y, w, h);
+  }
+  
   /**
    * Sets the clipping rectangle as the whole image.
    */
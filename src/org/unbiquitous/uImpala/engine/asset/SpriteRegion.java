@@ -0,0 +1,120 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import org.unbiquitous.uImpala.engine.io.Screen;
+import org.unbiquitous.uImpala.util.Color;
+import org.unbiquitous.uImpala.util.Corner;
+
+/**
+ * Immutable view of a rectangle of a sprite. Rendering a region is atomic
+ * and leaves the sprite rendering the whole image, so many animations, tile
+ * sets and threads can share one sprite sheet.
+ * @see Sprite#render(Screen, float, float, float, float, float, float, Corner, float, float, float, float, Color)
+ */
+public final class SpriteRegion {
+  /**
+   * Constructor.
+   * @param sprite Sprite to render from.
+   * @param x Coordinate x of rectangle origin.
+   * @param y Coordinate y of rectangle origin.
+   * @param w Rectangle width.
+   * @param h Rectangle height.
+   */
+  public SpriteRegion(Sprite sprite, float x, float y, float w, float h) {
+    this.sprite = sprite;
+    this.x = x;
+    this.y = y;
+    this.w = w;
+    this.h = h;
+  }
+  
+  /**
+   * Get a region of this region.
+   * @param x Coordinate x of rectangle origin, relative to this region.
+   * @param y Coordinate y of rectangle origin, relative to this region.
+   * @param w Rectangle width.
+   * @param h Rectangle height.
+   * @return Region, clamped to this region.
+   */
+  public SpriteRegion region(float x, float y, float w, float h) {
+    float cx = Math.max(0, Math.min(x, this.w)), cy = Math.max(0, Math.min(y, this.h));
+    return new SpriteRegion(sprite, this.x + cx, this.y + cy,
+      Math.max(0, Math.min(w, this.w - cx)), Math.max(0, Math.min(h, this.h - cy)));
+  }
+  
+  /**
+   * Render the region.
+   * @param screen Screen on which the region will be rendered.
+   * @param x Coordinate x of the center of the region.
+   * @param y Coordinate y of the center of the region.
+   */
+  public void render(Screen screen, float x, float y) {
+    render(screen, x, y, Corner.CENTER, 1.0f, 0.0f, 1.0f, 1.0f, Color.WHITE);
+  }
+  
+  /**
+   * Render the region.
+   * @param screen Screen on which the region will be rendered.
+   * @param x Coordinate x of the corner of the region.
+   * @param y Coordinate y of the corner of the region.
+   * @param corner Corner of the region. Null is considered Corner.CENTER.
+   */
+  public void render(Screen screen, float x, float y, Corner corner) {
+    render(screen, x, y, corner, 1.0f, 0.0f, 1.0f, 1.0f, Color.WHITE);
+  }
+  
+  /**
+   * Render the region.
+   * @param screen Screen on which the region will be rendered.
+   * @param x Coordinate x of the corner of the region.
+   * @param y Coordinate y of the corner of the region.
+   * @param corner Corner of the region. Null is considered Corner.CENTER.
+   * @param opacity The opacity. 1.0f means opaque, 0.0f means transparent.
+   * @param angle Angle of rotation in degrees.
+   * @param scaleX Scale the region in the horizontal axis. 1.0f means original size.
+   * @param scaleY Scale the region in the vertical axis. 1.0f means original size.
+   * @param color Color to multiply texture pixels.
+   */
+  public void render(Screen screen, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color) {
+    sprite.render(screen, this.x, this.y, w, h, x, y, corner, opacity, angle, scaleX, scaleY, color);
+  }
+  
+  /**
+   * @return Sprite rendered from.
+   */
+  public Sprite getSprite() {
+    return sprite;
+  }
+  
+  /**
+   * @return Coordinate x of rectangle origin.
+   */
+  public float getX() {
+    return x;
+  }
+  
+  /**
+   * @return Coordinate y of rectangle origin.
+   */
+  public float getY() {
+    return y;
+  }
+  
+  /**
+   * @return Rectangle width.
+   */
+  public float getWidth() {
+    return w;
+  }
+  
+  /**
+   * @return Rectangle height.
+   */
+  public float getHeight() {
+    return h;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private final Sprite sprite;
+  private final float x, y, w, h;
+}
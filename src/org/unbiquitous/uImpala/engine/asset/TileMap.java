@@ -1,9 +1,13 @@
 package org.unbiquitous.uImpala.engine.asset;
 
 import org.unbiquitous.uImpala.engine.io.Screen;
+import org.unbiquitous.uImpala.util.Corner;
 
 /**
- * Class to load a map from a file and render it using a TileSet.
+ * Class to load a map from a file and render it using a TileSet. If the
+ * platform supports it, the map is split in square chunks, and each chunk
+ * is baked into a single image the first time it is rendered. Writes to the
+ * logical map discard the baked images of the chunks they change.
  * @author Pimenta
  *
  */
@@ -14,24 +18,122 @@ public class TileMap {
    * @param tileSet TileSet to render each tile.
    */
   protected TileMap(Map map, TileSet tileSet) {
+    this(map, tileSet, null);
+  }
+  
+  /**
+   * Constructor.
+   * @param map Logical map to render tiles.
+   * @param tileSet TileSet to render each tile.
+   * @param assets Manager to bake chunks, or null to render each tile.
+   */
+  protected TileMap(Map map, TileSet tileSet, AssetManager assets) {
     this.map = map;
     this.tileSet = tileSet;
+    this.assets = assets;
+    changes = map.changes();
+    setChunkSize(16);
   }
   
   /**
-   * Render the whole map.
+   * Render the map. Only the tiles inside the screen are rendered.
    * @param screen Screen on which the map will be rendered.
    * @param x Coordinate x of top-left corner of the map.
    * @param y Coordinate y of top-left corner of the map.
    */
   public void render(Screen screen, float x, float y) {
-    for (int i = 0; i < map.rows; i++) {
-      for (int j = 0; j < map.cols; j++) {
-        int tileID = map.map[i][j];
-        if (tileID != 0)
-          tileSet.render(tileID - 1, screen, x + j*tileSet.tileWidth, y + i*tileSet.tileHeight);
+    render(screen, x, y, 0, 0, screen.getWidth(), screen.getHeight());
+  }
+  
+  /**
+   * Render the tiles of the map inside a rectangle of the screen. The cost
+   * depends on the size of the rectangle, not on the size of the map.
+   * @param screen Screen on which the map will be rendered.
+   * @param x Coordinate x of top-left corner of the map.
+   * @param y Coordinate y of top-left corner of the map.
+   * @param viewX Coordinate x of top-left corner of the rectangle.
+   * @param viewY Coordinate y of top-left corner of the rectangle.
+   * @param viewW Rectangle width.
+   * @param viewH Rectangle height.
+   */
+  public void render(Screen screen, float x, float y, float viewX, float viewY, float viewW, float viewH) {
+    int tw = tileSet.tileWidth, th = tileSet.tileHeight;
+    int firstRow = Math.max((int)Math.floor((viewY - y)/th), 0);
+    int firstCol = Math.max((int)Math.floor((viewX - x)/tw), 0);
+    int lastRow = Math.min((int)Math.ceil((viewY + viewH - y)/th), map.rows) - 1;
+    int lastCol = Math.min((int)Math.ceil((viewX + viewW - x)/tw), map.cols) - 1;
+    if (baked == null) {
+      renderTiles(screen, x, y, firstRow, firstCol, lastRow, lastCol);
+      return;
+    }
+    discardChanged();
+    frame++;
+    for (int cr = firstRow/chunkSize; cr <= lastRow/chunkSize; cr++) {
+      for (int cc = firstCol/chunkSize; cc <= lastCol/chunkSize; cc++) {
+        Sprite chunk = baked != null ? chunk(cr, cc) : null;
+        if (chunk != null)
+          chunk.render(screen, x + cc*chunkSize*tw, y + cr*chunkSize*th, Corner.TOP_LEFT);
+        else {
+          renderTiles(screen, x, y,
+            Math.max(firstRow, cr*chunkSize), Math.max(firstCol, cc*chunkSize),
+            Math.min(lastRow, (cr + 1)*chunkSize - 1), Math.min(lastCol, (cc + 1)*chunkSize - 1)
+          );
+        }
       }
     }
+    if (baked != null && bakedCount > maxBaked)
+      evict();
+  }
+  
+  /**
+   * Discards the baked image of the chunk of a position. Writes to the
+   * logical map do it by themselves, so call only when the tile of the
+   * position renders differently without a write, e.g. after changing the
+   * image of the tile set.
+   * @param i Row.
+   * @param j Column.
+   */
+  public void invalidate(int i, int j) {
+    invalidate(i, j, 1, 1);
+  }
+  
+  /**
+   * Discards the baked images of all chunks.
+   */
+  public void invalidate() {
+    if (baked == null)
+      return;
+    for (int i = 0; i < baked.length; i++)
+      discard(i);
+  }
+  
+  /**
+   * Sets the number of rows and columns of each chunk, discarding the
+   * baked images.
+   * @param chunkSize Chunk size, in tiles. Zero or less renders each tile.
+   */
+  public void setChunkSize(int chunkSize) {
+    invalidate();
+    this.chunkSize = chunkSize;
+    if (assets == null || chunkSize <= 0) {
+      baked = null;
+      return;
+    }
+    chunkCols = (map.cols + chunkSize - 1)/chunkSize;
+    int chunkRows = (map.rows + chunkSize - 1)/chunkSize;
+    baked = new Sprite[chunkRows*chunkCols];
+    used = new long[baked.length];
+    bakedCount = 0;
+    changes = map.changes();
+  }
+  
+  /**
+   * Sets the number of baked images to keep. The ones rendered least
+   * recently are discarded first.
+   * @param maxBaked Number of chunks. The default is 64.
+   */
+  public void setMaxBaked(int maxBaked) {
+    this.maxBaked = maxBaked;
   }
   
   /**
@@ -52,4 +154,94 @@ public class TileMap {
   
   private Map map;
   private TileSet tileSet;
+  private AssetManager assets;
+  private int chunkSize, chunkCols, bakedCount = 0, maxBaked = 64;
+  private Sprite[] baked = null;
+  private long[] used;
+  private long frame = 0, changes;
+  private int[] region = new int[4];
+  
+  private void renderTiles(Screen screen, float x, float y, int firstRow, int firstCol, int lastRow, int lastCol) {
+    int tw = tileSet.tileWidth, th = tileSet.tileHeight;
+    for (int i = firstRow; i <= lastRow; i++) {
+      for (int j = firstCol; j <= lastCol; j++) {
+        int tileID = map.get(i, j);
+        if (tileID != 0)
+          tileSet.render(tileID - 1, screen, x + j*tw, y + i*th);
+      }
+    }
+  }
+  
+  private void invalidate(int row, int col, int rows, int cols) {
+    if (baked == null)
+      return;
+    int firstRow = Math.max(row, 0), firstCol = Math.max(col, 0);
+    int lastRow = Math.min(row + rows, map.rows) - 1, lastCol = Math.min(col + cols, map.cols) - 1;
+    if (firstRow > lastRow || firstCol > lastCol)
+      return;
+    for (int cr = firstRow/chunkSize; cr <= lastRow/chunkSize; cr++) {
+      for (int cc = firstCol/chunkSize; cc <= lastCol/chunkSize; cc++)
+        discard(cr*chunkCols + cc);
+    }
+  }
+  
+  /**
+   * Discards the chunks changed by the writes to the logical map since the
+   * last call, or all of them if too many writes were done.
+   */
+  private void discardChanged() {
+    long count = map.changes();
+    if (count - changes > Map.CHANGES)
+      invalidate();
+    else {
+      for (long k = changes; k < count; k++) {
+        map.change(k, region);
+        invalidate(region[0], region[1], region[2], region[3]);
+      }
+    }
+    changes = count;
+  }
+  
+  private Sprite chunk(int chunkRow, int chunkCol) {
+    int index = chunkRow*chunkCols + chunkCol;
+    used[index] = frame;
+    if (baked[index] == null) {
+      int row = chunkRow*chunkSize, col = chunkCol*chunkSize;
+      int rows = Math.min(chunkSize, map.rows - row), cols = Math.min(chunkSize, map.cols - col);
+      int[] tiles = new int[rows*cols];
+      map.read(row, col, rows, cols, tiles, 0);
+      baked[index] = assets.newTileChunk(tileSet, tiles, rows, cols);
+      if (baked[index] == null) {
+        // platform cannot bake
+        baked = null;
+        return null;
+      }
+      bakedCount++;
+    }
+    return baked[index];
+  }
+  
+  private void evict() {
+    while (bakedCount > maxBaked) {
+      int oldest = -1;
+      for (int i = 0; i < baked.length; i++) {
+        if (baked[i] != null && used[i] != frame && (oldest < 0 || used[i] < used[oldest]))
+          oldest = i;
+      }
+      if (oldest < 0)
+        return;
+      discard(oldest);
+    }
+  }
+  
+  /**
+   * Releases the baked image of a chunk, if any.
+   */
+  private void discard(int index) {
+    if (baked[index] != null) {
+      assets.disposeSprite(baked[index]);
+      baked[index] = null;
+      bakedCount--;
+    }
+  }
 }
@@ -20,9 +20,9 @@ public class TileSet {
     sprite = spr;
     tileWidth = sprite.getWidth()/cols;
     tileHeight = sprite.getHeight()/rows;
-    tiles = new Tile[tileAmount];
+    tiles = new SpriteRegion[tileAmount];
     for (int tileID = 0; tileID < tileAmount; tileID++)
-      tiles[tileID] = new Tile((tileID%cols)*tileWidth, (tileID/cols)*tileHeight);
+      tiles[tileID] = sprite.region((tileID%cols)*tileWidth, (tileID/cols)*tileHeight, tileWidth, tileHeight);
   }
   
   /**
@@ -34,9 +34,16 @@ public class TileSet {
    * @param y Coordinate y of top-left corner of the tile.
    */
   public void render(int tileID, Screen screen, float x, float y) {
-    Tile tile = tiles[tileID];
-    sprite.clip(tile.x, tile.y, tileWidth, tileHeight);
-    sprite.render(screen, x, y, Corner.TOP_LEFT);
+    tiles[tileID].render(screen, x, y, Corner.TOP_LEFT);
+  }
+  
+  /**
+   * Get the region of a tile.
+   * @param tileID This number must be in the interval [0, rows*cols - 1].
+   * @return Region of the tile.
+   */
+  public SpriteRegion getTile(int tileID) {
+    return tiles[tileID];
   }
   
   /**
@@ -55,13 +62,5 @@ public class TileSet {
   protected int tileWidth, tileHeight;
   
   private Sprite sprite;
-  private Tile[] tiles;
-  
-  private class Tile {
-    public int x, y;
-    public Tile(int x, int y) {
-      this.x = x;
-      this.y = y;
-    }
-  }
+  private SpriteRegion[] tiles;
 }
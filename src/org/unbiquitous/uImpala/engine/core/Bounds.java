@@ -0,0 +1,38 @@
+package org.unbiquitous.uImpala.engine.core;
+
+/**
+ * Bounds of a game object, allocated only for objects that set them.
+ * @see GameObject#setBounds(float, float, float, float)
+ */
+final class Bounds {
+  boolean set = false;
+  float left, top, right, bottom;
+  
+  // union with the tree, refreshed at the end of the update of the object,
+  // or when rendered if dirty; dirty is also set on the ancestors, which
+  // are not updated if frozen
+  boolean dirty = true, treeChanged = true, treeSet = false;
+  float treeLeft, treeTop, treeRight, treeBottom;
+  GameObject parent = null;
+  
+  // cells occupied in the spatial index, if any
+  SpatialIndex index = null;
+  int col0, row0, col1, row1;
+  
+  boolean overlaps(float l, float t, float r, float b) {
+    return left <= r && l <= right && top <= b && t <= bottom;
+  }
+  
+  boolean contains(float x, float y) {
+    return left <= x && x <= right && top <= y && y <= bottom;
+  }
+  
+  /**
+   * Squared distance from a point to the rectangle. Zero if inside.
+   */
+  float distance2(float x, float y) {
+    float dx = Math.max(Math.max(left - x, x - right), 0);
+    float dy = Math.max(Math.max(top - y, y - bottom), 0);
+    return dx*dx + dy*dy;
+  }
+}
@@ -0,0 +1,92 @@
+package org.unbiquitous.uImpala.engine.core;
+
+/**
+ * Rectangle of the world seen on the screen. A GameObjectTreeScene with a
+ * camera does not render the trees whose bounds are outside it.
+ * @see GameObjectTreeScene#setCamera(Camera)
+ * @see GameObject#setBounds(float, float, float, float)
+ */
+public final class Camera {
+  /**
+   * Constructor.
+   * @param x Coordinate x of the top-left corner of the view.
+   * @param y Coordinate y of the top-left corner of the view.
+   * @param w View width.
+   * @param h View height.
+   */
+  public Camera(float x, float y, float w, float h) {
+    set(x, y, w, h);
+  }
+  
+  /**
+   * Sets the view.
+   * @param x Coordinate x of the top-left corner of the view.
+   * @param y Coordinate y of the top-left corner of the view.
+   * @param w View width.
+   * @param h View height.
+   */
+  public void set(float x, float y, float w, float h) {
+    this.x = x;
+    this.y = y;
+    this.w = Math.max(w, 0);
+    this.h = Math.max(h, 0);
+  }
+  
+  /**
+   * Moves the view, keeping its size.
+   * @param x Coordinate x of the top-left corner of the view.
+   * @param y Coordinate y of the top-left corner of the view.
+   */
+  public void setPosition(float x, float y) {
+    this.x = x;
+    this.y = y;
+  }
+  
+  /**
+   * Query if a rectangle is seen.
+   * @param x Coordinate x of the top-left corner of the rectangle.
+   * @param y Coordinate y of the top-left corner of the rectangle.
+   * @param w Rectangle width.
+   * @param h Rectangle height.
+   * @return True if the rectangle overlaps the view.
+   */
+  public boolean isVisible(float x, float y, float w, float h) {
+    return sees(x, y, x + w, y + h);
+  }
+  
+  /**
+   * @return Coordinate x of the top-left corner of the view.
+   */
+  public float getX() {
+    return x;
+  }
+  
+  /**
+   * @return Coordinate y of the top-left corner of the view.
+   */
+  public float getY() {
+    return y;
+  }
+  
+  /**
+   * @return View width.
+   */
+  public float getWidth() {
+    return w;
+  }
+  
+  /**
+   * @return View height.
+   */
+  public float getHeight() {
+    return h;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private float x, y, w, h;
+  
+  boolean sees(float left, float top, float right, float bottom) {
+    return left <= x + w && x <= right && top <= y + h && y <= bottom;
+  }
+}
@@ -0,0 +1,240 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.unbiquitous.uImpala.engine.time.Histogram;
+import org.unbiquitous.uImpala.engine.time.Time;
+import org.unbiquitous.uImpala.engine.time.Tracer;
+
+/**
+ * Class to measure the time spent on each phase of a frame and on each game
+ * scene, over the last 256 frames. Disabled by default. While disabled, each
+ * measurement point costs a single branch and the clock is not read. The
+ * statistics may be read from any thread, e.g. through JMX. The measurements
+ * are also recorded by the Tracer, when it is enabled.
+ * @see Game#getProfiler()
+ */
+public final class FrameProfiler implements FrameProfilerMBean {
+  /**
+   * Phases of a frame. In pipelined mode, RENDER is the time to capture the
+   * rendering operations and OUTPUT is not measured.
+   */
+  public enum Phase {
+    INPUTS, SCENES, RENDER, OUTPUT, STACK, FRAME
+  }
+  
+  public boolean isEnabled() {
+    return enabled;
+  }
+  
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+  
+  /**
+   * Get the histogram of a phase.
+   * @param phase Phase.
+   * @return Histogram of the phase.
+   */
+  public Histogram getPhase(Phase phase) {
+    return phases[phase.ordinal()];
+  }
+  
+  /**
+   * Get the histogram of the updates of a scene class.
+   * @param scene Scene class.
+   * @return Histogram of the updates, or null if never measured.
+   */
+  public synchronized Histogram getSceneUpdate(Class<? extends GameScene> scene) {
+    return updates.get(scene);
+  }
+  
+  /**
+   * Get the histogram of the renderings of a scene class.
+   * @param scene Scene class.
+   * @return Histogram of the renderings, or null if never measured.
+   */
+  public synchronized Histogram getSceneRender(Class<? extends GameScene> scene) {
+    return renders.get(scene);
+  }
+  
+  public synchronized String getReport() {
+    StringBuilder sb = new StringBuilder(String.format(
+      "%-40s %6s %9s %9s %9s %9s%n", "(ms)", "count", "mean", "p50", "p99", "max"
+    ));
+    for (Phase phase : Phase.values())
+      report(sb, phase.name(), phases[phase.ordinal()]);
+    for (Entry<Class<?>, Histogram> entry : updates.entrySet())
+      report(sb, entry.getKey().getName() + ".update", entry.getValue());
+    for (Entry<Class<?>, Histogram> entry : renders.entrySet())
+      report(sb, entry.getKey().getName() + ".render", entry.getValue());
+    return sb.toString();
+  }
+  
+  public synchronized long getPercentile(String name, double p) {
+    Histogram h = find(name);
+    return h == null ? -1 : h.percentile(p);
+  }
+  
+  public synchronized void reset() {
+    for (Histogram h : phases)
+      h.reset();
+    updates.clear();
+    renders.clear();
+  }
+  
+  /**
+   * Registers this profiler in the platform MBean server, replacing any
+   * profiler registered before.
+   */
+  public void register() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+      server.registerMBean(this, name);
+    } catch (Exception e) {
+      throw new Error(e);
+    }
+  }
+  
+  /**
+   * Removes this profiler from the platform MBean server, if registered.
+   */
+  public void unregister() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+    } catch (Exception e) {
+      throw new Error(e);
+    }
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final String MBEAN_NAME = "org.unbiquitous.uImpala:type=FrameProfiler";
+  
+  private volatile boolean enabled = false;
+  private Histogram[] phases = new Histogram[Phase.values().length];
+  private LinkedHashMap<Class<?>, Histogram> updates = new LinkedHashMap<Class<?>, Histogram>();
+  private LinkedHashMap<Class<?>, Histogram> renders = new LinkedHashMap<Class<?>, Histogram>();
+  private long frameStart = 0, phaseStart = 0; // unit: nanoseconds
+  
+  FrameProfiler() {
+    for (int i = 0; i < phases.length; i++)
+      phases[i] = new Histogram();
+  }
+  
+  /**
+   * Engine's private use. Starts measuring a frame.
+   */
+  void begin() {
+    if (!enabled && !Tracer.isEnabled())
+      return;
+    frameStart = phaseStart = Time.getNano();
+  }
+  
+  /**
+   * Engine's private use. Ends the measurement of a phase and starts the next.
+   */
+  void mark(Phase phase) {
+    if (frameStart == 0)
+      return;
+    long now = Time.getNano();
+    if (enabled) {
+      synchronized (this) {
+        phases[phase.ordinal()].record(now - phaseStart);
+      }
+    }
+    Tracer.span("loop", phase.name(), phaseStart, now);
+    phaseStart = now;
+  }
+  
+  /**
+   * Engine's private use. Ends the measurement of a frame.
+   */
+  void end() {
+    if (frameStart == 0)
+      return;
+    long now = Time.getNano();
+    if (enabled) {
+      synchronized (this) {
+        phases[Phase.FRAME.ordinal()].record(now - frameStart);
+      }
+    }
+    Tracer.frame(frameStart, now);
+    frameStart = 0;
+  }
+  
+  /**
+   * Engine's private use.
+   * @return Current time, or zero if disabled.
+   */
+  long now() {
+    return enabled || Tracer.isEnabled() ? Time.getNano() : 0;
+  }
+  
+  /**
+   * Engine's private use.
+   */
+  void updated(GameScene scene, long start) {
+    if (start == 0)
+      return;
+    long now = Time.getNano();
+    if (enabled)
+      record(updates, scene.getClass(), now - start);
+    Tracer.span("update", scene.getClass().getName(), start, now);
+  }
+  
+  /**
+   * Engine's private use.
+   */
+  void rendered(GameScene scene, long start) {
+    if (start == 0)
+      return;
+    long now = Time.getNano();
+    if (enabled)
+      record(renders, scene.getClass(), now - start);
+    Tracer.span("render", scene.getClass().getName(), start, now);
+  }
+  
+  private synchronized void record(LinkedHashMap<Class<?>, Histogram> map, Class<?> key, long ns) {
+    Histogram h = map.get(key);
+    if (h == null) {
+      h = new Histogram();
+      map.put(key, h);
+    }
+    h.record(ns);
+  }
+  
+  private Histogram find(String name) {
+    for (Phase phase : Phase.values()) {
+      if (phase.name().equals(name))
+        return phases[phase.ordinal()];
+    }
+    for (Entry<Class<?>, Histogram> entry : updates.entrySet()) {
+      if ((entry.getKey().getName() + ".update").equals(name))
+        return entry.getValue();
+    }
+    for (Entry<Class<?>, Histogram> entry : renders.entrySet()) {
+      if ((entry.getKey().getName() + ".render").equals(name))
+        return entry.getValue();
+    }
+    return null;
+  }
+  
+  private static void report(StringBuilder sb, String name, Histogram h) {
+    sb.append(String.format(
+      "%-40s %6d %9.3f %9.3f %9.3f %9.3f%n", name, h.count(),
+      h.mean()/1e6, h.percentile(50)/1e6, h.percentile(99)/1e6, h.max()/1e6
+    ));
+  }
+}
@@ -0,0 +1,37 @@
+package org.unbiquitous.uImpala.engine.core;
+
+/**
+ * JMX interface of the frame profiler.
+ * @see FrameProfiler
+ */
+public interface FrameProfilerMBean {
+  /**
+   * @return True if the profiler is measuring.
+   */
+  public boolean isEnabled();
+  
+  /**
+   * Starts or stops measuring.
+   * @param enabled Pass true to start measuring.
+   */
+  public void setEnabled(boolean enabled);
+  
+  /**
+   * @return Table with the statistics of every phase and scene measured.
+   */
+  public String getReport();
+  
+  /**
+   * Approximates a percentile of a phase or scene.
+   * @param name Name of a phase (e.g. "FRAME") or of a scene, as shown in the
+   * report.
+   * @param p Percentile in [0, 100].
+   * @return Time in nanoseconds, or -1 if the name was not measured.
+   */
+  public long getPercentile(String name, double p);
+  
+  /**
+   * Discards all measurements.
+   */
+  public void reset();
+}
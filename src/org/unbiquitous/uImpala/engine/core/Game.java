@@ -3,11 +3,19 @@ package org.unbiquitous.uImpala.engine.core;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 
+import org.unbiquitous.uImpala.engine.asset.AssetCache;
 import org.unbiquitous.uImpala.engine.io.InputManager;
 import org.unbiquitous.uImpala.engine.io.OutputManager;
 import org.unbiquitous.uImpala.engine.time.DeltaTime;
+import org.unbiquitous.uImpala.engine.time.Tracer;
 import org.unbiquitous.uos.core.InitialProperties;
 import org.unbiquitous.uos.core.UOS;
 import org.unbiquitous.uos.core.UOSLogging;
@@ -72,6 +80,45 @@ public abstract class Game implements UosApplication {
 		change_option = ChangeOption.PUSH;
 	}
 
+	/**
+	 * Call to construct a game scene in background and change the current
+	 * game scene to it when ready. The current game scene keeps running
+	 * meanwhile.
+	 * 
+	 * @param factory
+	 *            Constructs the new game scene, on a loader thread.
+	 * @return Handle to follow the construction.
+	 */
+	public SceneLoader changeAsync(Callable<? extends GameScene> factory) {
+		return load(factory, ChangeOption.CHANGE);
+	}
+
+	/**
+	 * @see Game#changeAsync(Callable)
+	 */
+	public SceneLoader changeAsync(Class<? extends GameScene> sceneClass) {
+		return load(factory(sceneClass), ChangeOption.CHANGE);
+	}
+
+	/**
+	 * Call to construct a game scene in background and push it when ready.
+	 * The current game scene keeps running meanwhile.
+	 * 
+	 * @param factory
+	 *            Constructs the game scene to be pushed, on a loader thread.
+	 * @return Handle to follow the construction.
+	 */
+	public SceneLoader pushAsync(Callable<? extends GameScene> factory) {
+		return load(factory, ChangeOption.PUSH);
+	}
+
+	/**
+	 * @see Game#pushAsync(Callable)
+	 */
+	public SceneLoader pushAsync(Class<? extends GameScene> sceneClass) {
+		return load(factory(sceneClass), ChangeOption.PUSH);
+	}
+
 	/**
 	 * Call to pop the current game scene.
 	 * 
@@ -90,6 +137,16 @@ public abstract class Game implements UosApplication {
 		change_option = ChangeOption.QUIT;
 	}
 
+	/**
+	 * Get the profiler of the game loop. It is disabled unless the setting
+	 * "profiler" is true.
+	 * 
+	 * @return The frame profiler.
+	 */
+	public FrameProfiler getProfiler() {
+		return profiler;
+	}
+
 	// ==============================================================================
 	// nothings else matters from here to below
 	// ==============================================================================
@@ -98,6 +155,16 @@ public abstract class Game implements UosApplication {
 	protected List<InputManager> inputs = new ArrayList<InputManager>();
 	protected List<OutputManager> outputs = new ArrayList<OutputManager>();
 	protected DeltaTime deltatime;
+	private RenderPipeline pipeline = null;
+	private boolean headless = false;
+	private GameRenderers discarded = new GameRenderers();
+	private FrameProfiler profiler = new FrameProfiler();
+	private ExecutorService updater = null;
+	private List<GameScene> concurrentScenes = new ArrayList<GameScene>();
+	private List<Future<?>> concurrentUpdates = new ArrayList<Future<?>>();
+	private ExecutorService loader = null;
+	private SceneLoader loading = null;
+	private ChangeOption loading_option = ChangeOption.NA;
 
 	private enum ChangeOption {
 		NA, CHANGE, PUSH, POP, QUIT
@@ -124,13 +191,40 @@ public abstract class Game implements UosApplication {
 	}
 
 	protected void update() {
+		profiler.begin();
 		deltatime.update();
 		updateInputs();
+		dispatchAssets();
+		profiler.mark(FrameProfiler.Phase.INPUTS);
 		updateScenes();
 		deltatime.accumulate();
-		renderScenes();
-		updateOutput();
+		profiler.mark(FrameProfiler.Phase.SCENES);
+		if (headless) {
+			discardScenes();
+			profiler.mark(FrameProfiler.Phase.RENDER);
+		}
+		else if (pipeline == null) {
+			renderScenes();
+			profiler.mark(FrameProfiler.Phase.RENDER);
+			updateOutput();
+			profiler.mark(FrameProfiler.Phase.OUTPUT);
+		}
+		else {
+			captureScenes();
+			profiler.mark(FrameProfiler.Phase.RENDER);
+		}
 		updateStack();
+		profiler.mark(FrameProfiler.Phase.STACK);
+		profiler.end();
+	}
+
+	/**
+	 * Delivers the assets loaded asynchronously to their listeners, on the
+	 * game thread.
+	 */
+	protected void dispatchAssets() {
+		for (GameScene gs : scenes)
+			gs.assets().dispatch();
 	}
 
 	protected void updateOutput() {
@@ -140,19 +234,143 @@ public abstract class Game implements UosApplication {
 
 	protected void renderScenes() {
 		for (GameScene gs : scenes) {
-			if (!gs.isFrozen() || (gs.isFrozen() && gs.isVisible()))
+			if (!gs.isFrozen()) {
+				release(gs);
+				long start = profiler.now();
 				gs.render();
+				profiler.rendered(gs, start);
+			}
+			else if (gs.isVisible()) {
+				long start = profiler.now();
+				GameRenderers snapshot = gs.snapshot();
+				if (snapshot != null)
+					snapshot.replay();
+				else
+					gs.render();
+				profiler.rendered(gs, start);
+			}
 		}
 	}
 
-	protected void updateScenes() {
-//		while (deltatime.dtReachedLimit()) {
-		deltatime.sleepDt();
-			for (GameScene gs : scenes) {
+	/**
+	 * Headless mode: collects the rendering operations of the scenes that
+	 * support capture() and discards them. render() is never called, since
+	 * there is no screen.
+	 */
+	protected void discardScenes() {
+		for (GameScene gs : scenes) {
+			if (!gs.isFrozen()) {
+				long start = profiler.now();
+				gs.capture(discarded);
+				discarded.clear();
+				profiler.rendered(gs, start);
+			}
+		}
+	}
+
+	/**
+	 * Pipelined mode: collects the rendering operations of the scenes and
+	 * hands them to the render thread, which also updates the output.
+	 */
+	protected void captureScenes() {
+		RenderPipeline.Frame frame = pipeline.back();
+		for (final GameScene gs : scenes) {
+			if (!gs.isFrozen())
+				release(gs);
+			if (!gs.isFrozen() || (gs.isFrozen() && gs.isVisible())) {
+				GameRenderers renderers = frame.next();
+				long start = profiler.now();
+				boolean captured;
 				if (!gs.isFrozen())
-					gs.update();
+					captured = gs.capture(renderers);
+				else {
+					GameRenderers snapshot = gs.snapshot();
+					if (snapshot != null)
+						renderers.copy(snapshot);
+					captured = snapshot != null;
+				}
+				profiler.rendered(gs, start);
+				if (!captured) {
+					renderers.put(0, new Runnable() {
+						public void run() {
+							gs.render();
+						}
+					});
+					frame.sync();
+				}
 			}
-//		}
+		}
+		pipeline.swap();
+	}
+
+	protected void updateScenes() {
+		if (!deltatime.isFixedStep()) {
+			deltatime.sleepDt();
+			stepScenes();
+			return;
+		}
+		// stop stepping when the stack is about to change, the time left is
+		// kept for the next frame
+		while (change_option == ChangeOption.NA && deltatime.dtReachedLimit())
+			stepScenes();
+	}
+
+	protected void stepScenes() {
+		for (GameScene gs : scenes) {
+			if (!gs.isFrozen()) {
+				if (gs.isConcurrent())
+					concurrentScenes.add(gs);
+				else
+					updateScene(gs);
+			}
+		}
+		if (concurrentScenes.size() > 0)
+			updateConcurrentScenes();
+	}
+
+	/**
+	 * Updates the concurrent scenes on the updater threads and waits for
+	 * them. The game thread updates the first one itself.
+	 */
+	private void updateConcurrentScenes() {
+		if (updater == null && concurrentScenes.size() > 1) {
+			int threads = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+			updater = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private int count = 0;
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "uImpala-update-" + count++);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		for (int i = 1; i < concurrentScenes.size(); i++) {
+			final GameScene gs = concurrentScenes.get(i);
+			concurrentUpdates.add(updater.submit(new Runnable() {
+				public void run() {
+					updateScene(gs);
+				}
+			}));
+		}
+		try {
+			updateScene(concurrentScenes.get(0));
+			for (Future<?> f : concurrentUpdates)
+				f.get();
+		} catch (InterruptedException e) {
+			throw new Error(e);
+		} catch (ExecutionException e) {
+			throw new Error(e.getCause());
+		} finally {
+			concurrentScenes.clear();
+			concurrentUpdates.clear();
+		}
+	}
+
+	private void updateScene(GameScene gs) {
+		long start = profiler.now();
+		gs.update();
+		gs.assets().getAnimator().update(deltatime.getDT());
+		profiler.updated(gs, start);
 	}
 
 	protected void updateInputs() {
@@ -219,6 +437,28 @@ public abstract class Game implements UosApplication {
 		} catch (Exception e) {
 			throw new Error(e);
 		}
+
+		if (Boolean.TRUE.equals(settings.get("profiler"))) {
+			profiler.setEnabled(true);
+			profiler.register();
+		}
+		if (Boolean.TRUE.equals(settings.get("trace"))) {
+			Number budget = (Number) settings.get("trace_budget");
+			if (budget != null)
+				Tracer.setFrameBudget((long) (budget.doubleValue() * 1000000),
+						settings.getString("root_path"));
+			Tracer.setEnabled(true);
+		}
+
+		Number assetBudget = (Number) settings.get("asset_cache_budget");
+		if (assetBudget != null)
+			AssetCache.setBudget((long) (assetBudget.doubleValue() * 1048576));
+
+		headless = Boolean.TRUE.equals(settings.get("headless"));
+
+		// render on another thread while the next frame is updated
+		if (!headless && Boolean.TRUE.equals(settings.get("pipelined_render")))
+			pipeline = new RenderPipeline(outputs);
 	}
 
 	private void validateSettings() {
@@ -226,25 +466,96 @@ public abstract class Game implements UosApplication {
 			throw new Error("GameSettings not defined!");
 		if (settings.get("first_scene") == null)
 			throw new Error("First game scene not defined!");
-		if (settings.get("output_managers") == null)
+		if (settings.get("output_managers") == null
+				&& !Boolean.TRUE.equals(settings.get("headless")))
 			throw new Error("Cannot start game with no output managers!");
 	}
 
 	protected void close() {
+		if (pipeline != null)
+			pipeline.close();
+		if (updater != null)
+			updater.shutdown();
+		if (loader != null)
+			loader.shutdown();
+		if (Boolean.TRUE.equals(settings.get("profiler")))
+			profiler.unregister();
 		for (InputManager im : inputs)
 			im.close();
 		for (OutputManager om : outputs)
 			om.close();
 	}
 
+	private SceneLoader load(Callable<? extends GameScene> factory,
+			ChangeOption option) {
+		if (loading != null)
+			throw new Error("Another game scene is already loading!");
+		if (loader == null) {
+			loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "uImpala-loader");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		final SceneLoader sl = new SceneLoader(factory);
+		loader.execute(new Runnable() {
+			public void run() {
+				sl.load();
+			}
+		});
+		loading = sl;
+		loading_option = option;
+		return sl;
+	}
+
+	/**
+	 * Disposes the offscreen image of a scene popped or no longer frozen on
+	 * the render thread: right away in immediate mode, after the next frame
+	 * in pipelined mode, since the frame being rendered may still draw it.
+	 */
+	private void release(GameScene gs) {
+		Runnable op = gs.releaseSnapshot();
+		if (op == null)
+			return;
+		if (pipeline != null)
+			pipeline.back().post(op);
+		else
+			op.run();
+	}
+
+	private static Callable<GameScene> factory(
+			final Class<? extends GameScene> sceneClass) {
+		return new Callable<GameScene>() {
+			public GameScene call() throws Exception {
+				return sceneClass.newInstance();
+			}
+		};
+	}
+
 	protected void updateStack() {
 		GameScene tmp;
+		// a scene loaded in background is applied when no other change is
+		// pending
+		if (change_option == ChangeOption.NA && loading != null
+				&& loading.isDone()) {
+			scene_change = loading.get();
+			change_option = loading_option;
+			loading = null;
+			loading_option = ChangeOption.NA;
+		}
+		// scenes may be destroyed, wait until their last frame is rendered
+		if (pipeline != null && change_option != ChangeOption.NA)
+			pipeline.sync();
 		switch (change_option) {
 		case NA:
 			break;
 
 		case CHANGE:
 			tmp = scenes.removeLast();
+			release(tmp);
+			tmp.assets().release();
 			tmp.assets().destroy();
 			tmp.destroy();
 			scenes.add(scene_change);
@@ -256,6 +567,8 @@ public abstract class Game implements UosApplication {
 
 		case POP:
 			tmp = scenes.removeLast();
+			release(tmp);
+			tmp.assets().release();
 			tmp.assets().destroy();
 			tmp.destroy();
 			if (scenes.size() > 0)
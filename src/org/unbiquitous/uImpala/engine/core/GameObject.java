@@ -1,7 +1,6 @@
 package org.unbiquitous.uImpala.engine.core;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -11,22 +10,6 @@ import java.util.List;
  *
  */
 public abstract class GameObject {
-  /**
-   * Flag to tell the parent if this object must be destroyed.
-   */
-  protected boolean destroy = false;
-  
-  /**
-   * If true, the parent won't call update() for this object.
-   */
-  protected boolean frozen = false;
-  
-  /**
-   * If true, the parent will call render() for this object, even if
-   * frozen is true.
-   */
-  protected boolean visible = false;
-  
   /**
    * Method to implement update.
    */
@@ -57,7 +40,9 @@ public abstract class GameObject {
    * @param o Game object.
    */
   public void add(GameObject o) {
-    newObjects.add(o);
+    if (objects == null)
+      objects = new GameObjectList();
+    objects.addPending(o);
   }
   
   /**
@@ -65,31 +50,31 @@ public abstract class GameObject {
    */
   protected void updateTree() {
     update();
-    for (GameObject o : objects) {
-      if (!o.destroy && !o.frozen)
-        o.updateTree();
+    GameObjectList objects = this.objects;
+    boolean changed = false;
+    if (objects != null) {
+      for (int i = 0, n = objects.size(); i < n; i++) {
+        GameObject o = objects.get(i);
+        if (o.isUpdatable())
+          o.updateTree();
+        Bounds b = o.bounds;
+        if (b != null && (b.dirty || b.treeChanged)) {
+          b.treeChanged = false;
+          changed = true;
+        }
+      }
+      changed |= objects.sweep();
+      changed |= objects.flush();
     }
-    while (newObjects.size() > 0)
-      objects.add(newObjects.removeFirst());
+    if (bounds != null && (changed || bounds.dirty))
+      aggregate();
   }
   
   /**
    * Calls render() for this object and its tree.
    */
   protected void renderTree(GameRenderers renderers) {
-    render(renderers);
-    Iterator<GameObject> i = objects.iterator();
-    while (i.hasNext()) {
-      GameObject o = i.next();
-      if (!o.destroy) {
-        if (!o.frozen || (o.frozen && o.visible))
-          o.renderTree(renderers);
-      }
-      else {
-        o.destroyTree();
-        i.remove();
-      }
-    }
+    renderTree(renderers, null);
   }
   
   /**
@@ -97,8 +82,10 @@ public abstract class GameObject {
    */
   protected void wakeupTree(Object... args) {
     wakeup(args);
-    for (GameObject o : objects)
-      o.wakeupTree(args);
+    if (objects == null)
+      return;
+    for (int i = 0, n = objects.size(); i < n; i++)
+      objects.get(i).wakeupTree(args);
   }
   
   /**
@@ -106,38 +93,273 @@ public abstract class GameObject {
    */
   protected void destroyTree() {
     destroy();
-    for (GameObject o : objects)
-      o.destroyTree();
+    if (bounds != null && bounds.index != null)
+      bounds.index.remove(this);
+    if (objects == null)
+      return;
+    for (int i = 0, n = objects.size(); i < n; i++)
+      objects.get(i).destroyTree();
   }
   
   /**
    * Get children game objects.
-   * @return Children game objects.
+   * @return Children game objects. Empty and immutable if no child was ever
+   * added.
    */
   public List<GameObject> getChildren() {
+    if (objects == null)
+      return Collections.emptyList();
     return objects;
   }
   
-  private List<GameObject> objects = new LinkedList<GameObject>();
-  private LinkedList<GameObject> newObjects = new LinkedList<GameObject>();
-
+  /**
+   * Sets the axis-aligned rectangle occupied by this object, moving it in
+   * the spatial index it was added to, if any.
+   * @param x Coordinate x of the top-left corner of the rectangle.
+   * @param y Coordinate y of the top-left corner of the rectangle.
+   * @param w Rectangle width.
+   * @param h Rectangle height.
+   * @see SpatialIndex
+   */
+  public void setBounds(float x, float y, float w, float h) {
+    Bounds b = bounds;
+    if (b == null)
+      bounds = b = new Bounds();
+    b.left = x;
+    b.top = y;
+    b.right = x + Math.max(w, 0);
+    b.bottom = y + Math.max(h, 0);
+    b.set = true;
+    dirty();
+    if (b.index != null)
+      b.index.move(this);
+  }
+  
+  /**
+   * Removes the bounds of this object, and the object from the spatial index
+   * it was added to, if any.
+   */
+  public void clearBounds() {
+    Bounds b = bounds;
+    if (b == null || !b.set)
+      return;
+    b.set = false;
+    dirty();
+    if (b.index != null)
+      b.index.move(this);
+  }
+  
+  /**
+   * Query if bounds were set.
+   * @return True if this object has bounds.
+   */
+  public boolean hasBounds() {
+    return bounds != null && bounds.set;
+  }
+  
+  /**
+   * @return Coordinate x of the top-left corner of the bounds. Zero if
+   * there are no bounds.
+   */
+  public float getBoundsX() {
+    return hasBounds() ? bounds.left : 0;
+  }
+  
+  /**
+   * @return Coordinate y of the top-left corner of the bounds. Zero if
+   * there are no bounds.
+   */
+  public float getBoundsY() {
+    return hasBounds() ? bounds.top : 0;
+  }
+  
+  /**
+   * @return Width of the bounds. Zero if there are no bounds.
+   */
+  public float getBoundsWidth() {
+    return hasBounds() ? bounds.right - bounds.left : 0;
+  }
+  
+  /**
+   * @return Height of the bounds. Zero if there are no bounds.
+   */
+  public float getBoundsHeight() {
+    return hasBounds() ? bounds.bottom - bounds.top : 0;
+  }
+  
+  /**
+   * Query if frozen.
+   * @return True if the parent won't call update() for this object.
+   */
   public boolean isFrozen() {
-    return frozen;
+    return (flags & FROZEN) != 0;
   }
 
+  /**
+   * Sets the frozen flag.
+   * @param frozen If true, the parent won't call update() for this object.
+   */
   public void setFrozen(boolean frozen) {
-    this.frozen = frozen;
+    flags = (byte)(frozen ? flags | FROZEN : flags & ~FROZEN);
   }
 
+  /**
+   * Query if visible.
+   * @return True if the parent will call render() for this object, even if
+   * frozen.
+   */
   public boolean isVisible() {
-    return visible;
+    return (flags & VISIBLE) != 0;
   }
 
+  /**
+   * Sets the visible flag.
+   * @param visible If true, the parent will call render() for this object,
+   * even if frozen.
+   */
   public void setVisible(boolean visible) {
-    this.visible = visible;
+    flags = (byte)(visible ? flags | VISIBLE : flags & ~VISIBLE);
   }
 
+  /**
+   * Query if this object must be destroyed.
+   * @return True if flagged to be destroyed.
+   */
+  public boolean isDestroyed() {
+    return (flags & DESTROY) != 0;
+  }
+  
+  /**
+   * Sets the flag to tell the parent if this object must be destroyed. The
+   * parent calls destroyTree() and removes the object at the end of its own
+   * update or, if the parent is frozen and visible, of its own render. The
+   * children of frozen invisible parents are removed after they are
+   * unfrozen.
+   * @param destroy Pass true to destroy.
+   */
   public void setDestroy(boolean destroy) {
-    this.destroy = destroy;
+    flags = (byte)(destroy ? flags | DESTROY : flags & ~DESTROY);
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final int DESTROY = 1, FROZEN = 2, VISIBLE = 4;
+  
+  // a leaf allocates nothing but itself
+  private byte flags = 0;
+  private GameObjectList objects = null;
+  private Bounds bounds = null;
+  
+  /**
+   * Engine's private use.
+   * @return Bounds, or null if never set.
+   */
+  Bounds bounds() {
+    return bounds;
+  }
+  
+  /**
+   * Engine's private use. Calls render() for this object and its tree,
+   * skipping the trees whose bounds are outside the camera.
+   * @param camera Camera, or null to render everything.
+   */
+  void renderTree(GameRenderers renderers, Camera camera) {
+    Bounds b = bounds;
+    if (camera == null || b == null || !b.set || camera.sees(b.left, b.top, b.right, b.bottom))
+      render(renderers);
+    GameObjectList objects = this.objects;
+    if (objects == null)
+      return;
+    boolean destroyed = false;
+    for (int i = 0, n = objects.size(); i < n; i++) {
+      GameObject o = objects.get(i);
+      if (o.isRenderable()) {
+        if (camera == null || o.isSeen(camera))
+          o.renderTree(renderers, camera);
+      }
+      else
+        destroyed |= o.isDestroyed();
+    }
+    // frozen objects do not update, so their children are swept here
+    if (destroyed && objects.sweep() && b != null)
+      dirty();
+  }
+  
+  /**
+   * Engine's private use.
+   * @return False if the bounds of the tree are outside the camera.
+   */
+  boolean isSeen(Camera camera) {
+    Bounds b = bounds;
+    if (b == null)
+      return true;
+    if (b.dirty)
+      aggregate();
+    return !b.treeSet || camera.sees(b.treeLeft, b.treeTop, b.treeRight, b.treeBottom);
+  }
+  
+  /**
+   * Flags the union of the bounds of this tree to be refreshed, and the
+   * ones of the ancestors with bounds, which may be frozen and not updated.
+   * Stops at an ancestor already flagged, whose ancestors are flagged too.
+   */
+  private void dirty() {
+    Bounds b = bounds;
+    b.dirty = true;
+    for (GameObject p = b.parent; p != null && p.bounds != null && !p.bounds.dirty; p = p.bounds.parent)
+      p.bounds.dirty = true;
+  }
+  
+  /**
+   * Refreshes the union of the bounds of the tree. Children without bounds
+   * make the tree unbounded, and dirty children are refreshed first.
+   */
+  private void aggregate() {
+    Bounds b = bounds;
+    b.dirty = false;
+    boolean set = b.set;
+    float left = b.left, top = b.top, right = b.right, bottom = b.bottom;
+    GameObjectList objects = this.objects;
+    for (int i = 0, n = objects == null ? 0 : objects.size(); set && i < n; i++) {
+      GameObject o = objects.get(i);
+      Bounds c = o.bounds;
+      if (c != null) {
+        c.parent = this;
+        if (c.dirty)
+          o.aggregate();
+      }
+      if (c == null || !c.treeSet)
+        set = false;
+      else {
+        left = Math.min(left, c.treeLeft);
+        top = Math.min(top, c.treeTop);
+        right = Math.max(right, c.treeRight);
+        bottom = Math.max(bottom, c.treeBottom);
+      }
+    }
+    if (set != b.treeSet || left != b.treeLeft || top != b.treeTop || right != b.treeRight || bottom != b.treeBottom) {
+      b.treeSet = set;
+      b.treeLeft = left;
+      b.treeTop = top;
+      b.treeRight = right;
+      b.treeBottom = bottom;
+      b.treeChanged = true;
+    }
+  }
+  
+  /**
+   * Engine's private use.
+   * @return True if the parent must call updateTree().
+   */
+  boolean isUpdatable() {
+    return (flags & (DESTROY | FROZEN)) == 0;
+  }
+  
+  /**
+   * Engine's private use.
+   * @return True if the parent must call renderTree().
+   */
+  boolean isRenderable() {
+    return (flags & DESTROY) == 0 && (flags & (FROZEN | VISIBLE)) != FROZEN;
   }
 }
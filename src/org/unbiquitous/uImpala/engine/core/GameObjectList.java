@@ -0,0 +1,116 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import java.util.AbstractList;
+
+/**
+ * Array-backed list of the children of a game object or game object tree
+ * scene. The engine iterates it by index, so a frame allocates nothing.
+ * Objects added are pending until flush(), and destroyed objects are
+ * removed by sweep(), keeping the order of the others.
+ * @see GameObject
+ * @see GameObjectTreeScene
+ */
+final class GameObjectList extends AbstractList<GameObject> {
+  public GameObject get(int index) {
+    if (index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return objects[index];
+  }
+  
+  public int size() {
+    return size;
+  }
+  
+  public GameObject set(int index, GameObject o) {
+    GameObject old = get(index);
+    objects[index] = o;
+    return old;
+  }
+  
+  public void add(int index, GameObject o) {
+    if (index > size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    if (size == objects.length)
+      objects = grow(objects, size);
+    System.arraycopy(objects, index, objects, index + 1, size - index);
+    objects[index] = o;
+    size++;
+    modCount++;
+  }
+  
+  public GameObject remove(int index) {
+    GameObject old = get(index);
+    System.arraycopy(objects, index + 1, objects, index, size - index - 1);
+    objects[--size] = null;
+    modCount++;
+    return old;
+  }
+  
+  /**
+   * Adds an object at the end of the list on the next flush().
+   * @param o Game object.
+   */
+  void addPending(GameObject o) {
+    if (pendingSize == pending.length)
+      pending = grow(pending, pendingSize);
+    pending[pendingSize++] = o;
+  }
+  
+  /**
+   * Appends the pending objects, in the order they were added.
+   * @return True if any was appended.
+   */
+  boolean flush() {
+    if (pendingSize == 0)
+      return false;
+    if (size + pendingSize > objects.length) {
+      GameObject[] tmp = new GameObject[Math.max(2*objects.length, size + pendingSize)];
+      System.arraycopy(objects, 0, tmp, 0, size);
+      objects = tmp;
+    }
+    System.arraycopy(pending, 0, objects, size, pendingSize);
+    size += pendingSize;
+    for (int i = 0; i < pendingSize; i++)
+      pending[i] = null;
+    pendingSize = 0;
+    modCount++;
+    return true;
+  }
+  
+  /**
+   * Calls destroyTree() for the objects flagged to be destroyed and removes
+   * them, compacting the others in a single pass.
+   * @return True if any was removed.
+   */
+  boolean sweep() {
+    GameObject[] objects = this.objects;
+    int n = size, j = 0;
+    for (int i = 0; i < n; i++) {
+      GameObject o = objects[i];
+      if (o.isDestroyed())
+        o.destroyTree();
+      else
+        objects[j++] = o;
+    }
+    if (j == n)
+      return false;
+    for (int i = j; i < n; i++)
+      objects[i] = null;
+    size = j;
+    modCount++;
+    return true;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final GameObject[] EMPTY = new GameObject[0];
+  
+  private GameObject[] objects = EMPTY, pending = EMPTY;
+  private int size = 0, pendingSize = 0;
+  
+  private static GameObject[] grow(GameObject[] array, int size) {
+    GameObject[] tmp = new GameObject[Math.max(4, 2*size)];
+    System.arraycopy(array, 0, tmp, 0, size);
+    return tmp;
+  }
+}
@@ -1,8 +1,15 @@
 package org.unbiquitous.uImpala.engine.core;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.unbiquitous.uImpala.engine.time.Tracer;
 
 /**
  * Class to automatically update and render game objects.
@@ -18,7 +25,75 @@ public abstract class GameObjectTreeScene extends GameScene {
    * @param o Game object.
    */
   protected void add(GameObject o) {
-    newObjects.add(o);
+    int i = parallel ? task.get()[0] : -1;
+    if (i < 0)
+      objects.addPending(o);
+    else {
+      // called from the update of the i-th child, merged in order later
+      ArrayList<GameObject> buffer = deferred.get(i);
+      if (buffer == null) {
+        buffer = new ArrayList<GameObject>();
+        deferred.set(i, buffer);
+      }
+      buffer.add(o);
+    }
+  }
+  
+  /**
+   * Get the spatial index of this scene.
+   * @return Spatial index, or null if not set.
+   */
+  public SpatialIndex getSpatialIndex() {
+    return index;
+  }
+  
+  /**
+   * Sets the spatial index of this scene, to find its objects by position.
+   * Objects with bounds are added to it with SpatialIndex.add(), and leave
+   * it when destroyed.
+   * @param index Spatial index.
+   */
+  public void setSpatialIndex(SpatialIndex index) {
+    this.index = index;
+  }
+  
+  /**
+   * Get the camera of this scene.
+   * @return Camera, or null if not set.
+   */
+  public Camera getCamera() {
+    return camera;
+  }
+  
+  /**
+   * Sets the camera of this scene. Objects whose trees have bounds outside
+   * it are not rendered. Objects without bounds are always rendered, and so
+   * are their parents' trees.
+   * @param camera Camera, or null to render every object.
+   */
+  public void setCamera(Camera camera) {
+    this.camera = camera;
+  }
+  
+  /**
+   * Query if the children are updated in parallel.
+   * @return True if parallel.
+   */
+  public boolean isParallel() {
+    return parallel;
+  }
+  
+  /**
+   * Sets whether the children are updated in parallel, each child with its
+   * tree on a single thread. Only for scenes whose children never touch each
+   * other's trees during update. Objects added to the scene and children
+   * flagged to be destroyed are merged after all the children are updated,
+   * in the order of the children, so the result does not depend on the
+   * threads.
+   * @param parallel Pass true to update in parallel.
+   */
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
   }
 //==============================================================================
 //nothings else matters from here to below
@@ -27,12 +102,24 @@ public abstract class GameObjectTreeScene extends GameScene {
    * Engine's private use.
    */
   public void update() {
-    for (GameObject o : objects) {
-      if (!o.destroy && !o.frozen)
-        o.updateTree();
+    GameObjectList objects = this.objects;
+    if (parallel && objects.size() > 1)
+      updateParallel(objects.size());
+    else {
+      for (int i = 0, n = objects.size(); i < n; i++) {
+        GameObject o = objects.get(i);
+        if (o.isUpdatable()) {
+          Tracer.begin("updateTree", o.getClass());
+          try {
+            o.updateTree();
+          } finally {
+            Tracer.end();
+          }
+        }
+      }
     }
-    while (newObjects.size() > 0)
-      objects.add(newObjects.removeFirst());
+    objects.sweep();
+    objects.flush();
   }
   
   /**
@@ -40,35 +127,46 @@ public abstract class GameObjectTreeScene extends GameScene {
    */
   public void render() {
     GameRenderers renderers = new GameRenderers();
-    Iterator<GameObject> i = objects.iterator();
-    while (i.hasNext()) {
-      GameObject o = i.next();
-      if (!o.destroy) {
-        if (!o.frozen || (o.frozen && o.visible))
-          o.renderTree(renderers);
-      }
-      else {
-        o.destroyTree();
-        i.remove();
+    capture(renderers);
+    renderers.render();
+  }
+  
+  /**
+   * Engine's private use.
+   */
+  protected boolean capture(GameRenderers renderers) {
+    GameObjectList objects = this.objects;
+    Camera camera = this.camera;
+    boolean destroyed = false;
+    for (int i = 0, n = objects.size(); i < n; i++) {
+      GameObject o = objects.get(i);
+      if (o.isRenderable()) {
+        if (camera == null || o.isSeen(camera))
+          o.renderTree(renderers, camera);
       }
+      else
+        destroyed |= o.isDestroyed();
     }
-    renderers.render();
+    // a frozen scene does not update, so its objects are swept here
+    if (destroyed)
+      objects.sweep();
+    return true;
   }
   
   /**
    * Engine's private use.
    */
   protected void wakeup(Object... args) {
-    for (GameObject o : objects)
-      o.wakeupTree(args);
+    for (int i = 0, n = objects.size(); i < n; i++)
+      objects.get(i).wakeupTree(args);
   }
   
   /**
    * Engine's private use.
    */
   protected void destroy() {
-    for (GameObject o : objects)
-      o.destroyTree();
+    for (int i = 0, n = objects.size(); i < n; i++)
+      objects.get(i).destroyTree();
   }
   
   /**
@@ -79,6 +177,114 @@ public abstract class GameObjectTreeScene extends GameScene {
     return objects;
   }
   
-  private List<GameObject> objects = new LinkedList<GameObject>();
-  private LinkedList<GameObject> newObjects = new LinkedList<GameObject>();
+  private static final int HELPERS = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+  private static ExecutorService updater = null;
+  
+  private GameObjectList objects = new GameObjectList();
+  private boolean parallel = false;
+  private SpatialIndex index = null;
+  private Camera camera = null;
+  private AtomicInteger next = new AtomicInteger();
+  private ArrayList<ArrayList<GameObject>> deferred = new ArrayList<ArrayList<GameObject>>();
+  private List<Future<?>> helpers = new ArrayList<Future<?>>();
+  private ThreadLocal<int[]> task = new ThreadLocal<int[]>() {
+    protected int[] initialValue() {
+      return new int[] {-1};                // index of the child being updated
+    }
+  };
+  private Runnable helper = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+  
+  private static synchronized ExecutorService updater() {
+    if (updater == null) {
+      updater = Executors.newFixedThreadPool(HELPERS, new ThreadFactory() {
+        private int count = 0;
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "uImpala-tree-" + count++);
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return updater;
+  }
+  
+  /**
+   * Updates the children on the helper threads and on the calling one. Each
+   * thread takes the next child not taken yet, so threads that finish early
+   * take the work left by the others.
+   */
+  private void updateParallel(int n) {
+    while (deferred.size() < n)
+      deferred.add(null);
+    next.set(0);
+    ExecutorService updater = updater();
+    Throwable error = null;
+    try {
+      for (int i = Math.min(HELPERS, n - 1); i > 0; i--)
+        helpers.add(updater.submit(helper));
+      drain();
+    } catch (Throwable t) {
+      error = t;
+    }
+    // every helper is waited, even after an interrupt, so none is still
+    // updating a child when this returns
+    boolean interrupted = false;
+    for (int i = 0; i < helpers.size(); i++) {
+      Future<?> f = helpers.get(i);
+      while (true) {
+        try {
+          f.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (error == null)
+            error = e.getCause();
+          break;
+        }
+      }
+    }
+    helpers.clear();
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    for (int i = 0; i < n; i++) {
+      ArrayList<GameObject> buffer = deferred.get(i);
+      if (buffer != null && buffer.size() > 0) {
+        for (int j = 0; j < buffer.size(); j++)
+          objects.addPending(buffer.get(j));
+        buffer.clear();
+      }
+    }
+    if (error instanceof Error)
+      throw (Error)error;
+    if (error instanceof RuntimeException)
+      throw (RuntimeException)error;
+    if (error != null)
+      throw new Error(error);
+  }
+  
+  private void drain() {
+    GameObjectList objects = this.objects;
+    int[] slot = task.get();
+    try {
+      for (int i = next.getAndIncrement(), n = objects.size(); i < n; i = next.getAndIncrement()) {
+        GameObject o = objects.get(i);
+        if (o.isUpdatable()) {
+          slot[0] = i;
+          Tracer.begin("updateTree", o.getClass());
+          try {
+            o.updateTree();
+          } finally {
+            Tracer.end();
+          }
+        }
+      }
+    } finally {
+      slot[0] = -1;
+    }
+  }
 }
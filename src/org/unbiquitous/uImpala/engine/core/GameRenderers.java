@@ -37,6 +37,24 @@ public class GameRenderers {
     }
   }
   
+  /**
+   * Method to discard all rendering operations.
+   */
+  public void clear() {
+    renderers.clear();
+  }
+  
+  /**
+   * Method to render everything, keeping the container. Used to render a
+   * frozen scene again without capturing its operations.
+   */
+  public void replay() {
+    for (List<Runnable> l : renderers.values()) {
+      for (Runnable renderer : l)
+        renderer.run();
+    }
+  }
+  
   /**
    * Method to copy the rendering operations from another GameRenderers object
    * to this one.
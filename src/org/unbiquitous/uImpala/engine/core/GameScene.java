@@ -25,16 +25,52 @@ public abstract class GameScene {
    */
   private boolean visible = false;
   
+  /**
+   * If true, the engine may call update() for this scene on another thread,
+   * concurrently with the other scenes. Set only for scenes that share no
+   * state with the other scenes while updating.
+   */
+  private boolean concurrent = false;
+  
   /**
    * Method to implement update.
    */
   protected abstract void update();
   
   /**
-   * Method to implement rendering.
+   * Method to implement rendering. In fixed step mode, use
+   * DeltaTime.getAlpha() to interpolate between the last two updates.
+   * @see org.unbiquitous.uImpala.engine.time.DeltaTime#getAlpha()
    */
   public abstract void render();
   
+  /**
+   * Method to implement rendering by adding rendering operations to a
+   * container instead of rendering immediately. In pipelined mode, the
+   * operations are called on the render thread while the next frame is
+   * updated, so they must not read state changed by update().
+   * @param renderers Container for the rendering operations of this scene.
+   * @return False if this scene can only render immediately through
+   * render(), which forces the engine to wait for the frame to be rendered.
+   * The default implementation returns false.
+   */
+  protected boolean capture(GameRenderers renderers) {
+    return false;
+  }
+  
+  /**
+   * Call to capture the rendering operations of this scene again. While
+   * frozen and visible, the engine captures them only once, renders them to
+   * an offscreen image and draws that image every frame, so call this
+   * whenever what the scene renders changes while frozen. On platforms that
+   * cannot render to images, the captured operations are run again every
+   * frame instead, which only saves the capture.
+   * @see AssetManager#newSnapshot(Runnable)
+   */
+  public void invalidate() {
+    snapshotValid = false;
+  }
+  
   /**
    * Handle a pop from the stack of game scenes.
    * @param args Arguments passed from the scene popped.
@@ -55,6 +91,8 @@ public abstract class GameScene {
 	}
 
 	public void setFrozen(boolean frozen) {
+		if (!frozen)
+			invalidate();
 		this.frozen = frozen;
 	}
 
@@ -66,7 +104,111 @@ public abstract class GameScene {
 		this.visible = visible;
 	}
 	
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+	
 	public AssetManager assets() {
 	  return assets;
 	}
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private GameRenderers snapshot = null;
+  private Snapshot image = null;
+  private boolean snapshotValid = false;
+  
+  /**
+   * Engine's private use. Captures the rendering operations of this scene if
+   * they were not captured since it was frozen or invalidated.
+   * @return A single operation drawing the snapshot of this scene, or null if
+   * this scene can only render immediately.
+   */
+  GameRenderers snapshot() {
+    if (!snapshotValid) {
+      GameRenderers captured = new GameRenderers();
+      if (!capture(captured))
+        return null;
+      image = new Snapshot(assets, captured, image);
+      snapshot = new GameRenderers();
+      snapshot.put(0, image);
+      snapshotValid = true;
+    }
+    return snapshot;
+  }
+  
+  /**
+   * Engine's private use. Forgets the snapshot of this scene, once it is
+   * popped or no longer frozen.
+   * @return Operation disposing the offscreen image of the snapshot, to be
+   * run on the render thread after the image was last drawn, or null if
+   * there is none.
+   */
+  Runnable releaseSnapshot() {
+    final Snapshot released = image;
+    image = null;
+    snapshot = null;
+    snapshotValid = false;
+    if (released == null)
+      return null;
+    return new Runnable() {
+      public void run() {
+        released.dispose();
+      }
+    };
+  }
+  
+  /**
+   * Draws the offscreen image of the captured operations, created when first
+   * run, or runs the operations again if the platform cannot create it. Runs
+   * on the render thread, which also disposes there the image of the
+   * snapshot it replaced.
+   */
+  private static final class Snapshot implements Runnable {
+    private final AssetManager assets;
+    private final GameRenderers captured;
+    private Snapshot previous;
+    private Runnable image = null;
+    private boolean created = false;
+    
+    public Snapshot(AssetManager assets, GameRenderers captured, Snapshot previous) {
+      this.assets = assets;
+      this.captured = captured;
+      this.previous = previous;
+    }
+    
+    public void run() {
+      if (previous != null) {
+        previous.dispose();
+        previous = null;
+      }
+      if (!created) {
+        created = true;
+        image = assets.newSnapshot(new Runnable() {
+          public void run() {
+            captured.replay();
+          }
+        });
+      }
+      if (image != null)
+        image.run();
+      else
+        captured.replay();
+    }
+    
+    private void dispose() {
+      if (previous != null) {
+        previous.dispose();
+        previous = null;
+      }
+      if (image != null) {
+        assets.disposeSnapshot(image);
+        image = null;
+      }
+    }
+  }
 }
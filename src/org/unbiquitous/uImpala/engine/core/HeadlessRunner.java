@@ -0,0 +1,178 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import org.unbiquitous.uImpala.engine.time.Time;
+import org.unbiquitous.uos.core.adaptabitilyEngine.Gateway;
+
+/**
+ * Class to run a game without uOS and without output managers, as fast as
+ * possible, to measure the throughput of the engine. The game is driven on
+ * the calling thread and no screen is required, so it can run on servers
+ * with no display. The scenes are never rendered: the rendering operations
+ * of the scenes that support GameScene.capture() are collected and
+ * discarded.
+ * @see Game
+ */
+public final class HeadlessRunner {
+  /**
+   * Results of a run.
+   */
+  public static final class Report {
+    /**
+     * @return Number of frames run. Each frame updates the scenes once.
+     */
+    public int getFrames() {
+      return frames;
+    }
+  
+    /**
+     * @return Updates per second.
+     */
+    public double getUPS() {
+      return time > 0 ? frames*1e9/time : 0;
+    }
+  
+    /**
+     * @return Median frame time in nanoseconds.
+     */
+    public long getP50() {
+      return p50;
+    }
+  
+    /**
+     * @return 99th percentile of frame time in nanoseconds.
+     */
+    public long getP99() {
+      return p99;
+    }
+  
+    /**
+     * @return Bytes allocated per second by the game thread, or a negative
+     * number if the JVM cannot measure it.
+     */
+    public double getAllocationRate() {
+      if (allocated < 0)
+        return -1;
+      return time > 0 ? allocated*1e9/time : 0;
+    }
+  
+    public String toString() {
+      return String.format(
+        "%d frames, %.1f updates/s, p50 %.3f ms, p99 %.3f ms, %.1f MB/s allocated",
+        frames, getUPS(), p50/1e6, p99/1e6, getAllocationRate()/(1024*1024)
+      );
+    }
+  
+    private int frames;
+    private long time, p50, p99, allocated; // unit: nanoseconds and bytes
+  }
+  
+  /**
+   * Constructor.
+   * @param game Game to run.
+   * @param settings Game settings. Output managers are optional.
+   */
+  public HeadlessRunner(Game game, GameSettings settings) {
+    this(game, settings, null);
+  }
+  
+  /**
+   * Constructor.
+   * @param game Game to run.
+   * @param settings Game settings. Output managers are optional.
+   * @param gateway Gateway for input managers that need one, or null.
+   */
+  public HeadlessRunner(Game game, GameSettings settings, Gateway gateway) {
+    this.game = game;
+    this.settings = settings;
+    this.gateway = gateway;
+  }
+  
+  /**
+   * Runs a number of frames, or until the game quits.
+   * @param frames Number of frames.
+   * @return Results of the run.
+   */
+  public Report runFrames(int frames) {
+    return run(frames, Long.MAX_VALUE);
+  }
+  
+  /**
+   * Runs for some time, or until the game quits.
+   * @param ms Time in milliseconds.
+   * @return Results of the run.
+   */
+  public Report runFor(long ms) {
+    return run(Integer.MAX_VALUE, ms*1000000);
+  }
+  
+  /**
+   * Closes the game. Call after the last run.
+   */
+  public void close() {
+    if (started)
+      game.close();
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private Game game;
+  private GameSettings settings;
+  private Gateway gateway;
+  private boolean started = false;
+  private long[] samples = new long[1024]; // unit: nanoseconds
+  
+  private void start() {
+    if (started)
+      return;
+    settings.put("headless", true);
+    if (settings.get("root_path") == null)
+      settings.put("root_path", ".");
+    game.settings = settings;
+    game.init(gateway);
+    game.deltatime.setUnthrottled(true);
+    started = true;
+  }
+  
+  private Report run(int maxFrames, long maxTime) {
+    start();
+    if (maxFrames > samples.length && maxFrames != Integer.MAX_VALUE)
+      samples = new long[maxFrames];
+  
+    long allocatedBefore = allocated();
+    long begin = Time.getNano(), now = begin;
+    int frames = 0;
+    while (frames < maxFrames && now - begin < maxTime && game.scenes.size() > 0) {
+      game.update();
+      long end = Time.getNano();
+      if (frames == samples.length)
+        samples = Arrays.copyOf(samples, 2*frames);
+      samples[frames++] = end - now;
+      now = end;
+    }
+    long allocatedAfter = allocated();
+  
+    Report report = new Report();
+    report.frames = frames;
+    report.time = now - begin;
+    if (frames > 0) {
+      Arrays.sort(samples, 0, frames);
+      report.p50 = samples[(frames - 1)/2];
+      report.p99 = samples[(int)((frames - 1)*0.99)];
+    }
+    report.allocated = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+    return report;
+  }
+  
+  private static long allocated() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+      Thread.currentThread().getId()
+    );
+  }
+}
@@ -0,0 +1,171 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.unbiquitous.uImpala.engine.io.OutputManager;
+
+/**
+ * Class to call the rendering operations of a frame on a render thread,
+ * while the game thread updates the next frame. The frames are double
+ * buffered: the game thread fills one while the render thread renders the
+ * other, and they are swapped at the end of every frame.
+ * @see Game
+ */
+final class RenderPipeline implements Runnable {
+  /**
+   * Rendering operations of a frame, one container per scene in the order
+   * the scenes must be rendered. The containers are reused between frames.
+   */
+  static final class Frame {
+    /**
+     * Get an empty container for the next scene.
+     * @return Container for the rendering operations of a scene.
+     */
+    GameRenderers next() {
+      if (used == scenes.size())
+        scenes.add(new GameRenderers());
+      return scenes.get(used++);
+    }
+  
+    /**
+     * Add an operation to be run after the scenes of this frame are
+     * rendered, like disposing an image they drew for the last time.
+     * @param op Operation to run on the render thread.
+     */
+    void post(Runnable op) {
+      posted.add(op);
+    }
+  
+    /**
+     * Tell the game thread to wait until this frame is rendered.
+     */
+    void sync() {
+      sync = true;
+    }
+  
+    private void render() {
+      for (int i = 0; i < used; i++)
+        scenes.get(i).render();
+      used = 0;
+      for (Runnable op : posted)
+        op.run();
+      posted.clear();
+    }
+  
+    private ArrayList<GameRenderers> scenes = new ArrayList<GameRenderers>();
+    private ArrayList<Runnable> posted = new ArrayList<Runnable>();
+    private int used = 0;
+    private boolean sync = false;
+  }
+  
+  /**
+   * Starts the render thread.
+   * @param outputs Output managers to update after rendering each frame.
+   */
+  RenderPipeline(List<OutputManager> outputs) {
+    this.outputs = outputs;
+    thread = new Thread(this, "uImpala-render");
+    thread.start();
+  }
+  
+  /**
+   * Get the frame to be filled by the game thread.
+   * @return Frame not being rendered.
+   */
+  Frame back() {
+    return back;
+  }
+  
+  /**
+   * Waits for the render thread to finish the previous frame and hands it
+   * the back frame.
+   */
+  synchronized void swap() {
+    await();
+    Frame tmp = front;
+    front = back;
+    back = tmp;
+    boolean wait = front.sync;
+    front.sync = false;
+    busy = true;
+    notifyAll();
+    if (wait)
+      await();
+  }
+  
+  /**
+   * Waits for the render thread to finish the frame in progress.
+   */
+  synchronized void sync() {
+    await();
+  }
+  
+  /**
+   * Waits for the frame in progress and stops the render thread.
+   */
+  void close() {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      throw new Error(e);
+    }
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private List<OutputManager> outputs;
+  private Thread thread;
+  private Frame front = new Frame(), back = new Frame();
+  private boolean busy = false, closed = false;
+  private Throwable error = null;
+  
+  /**
+   * Render thread's loop.
+   */
+  public void run() {
+    while (true) {
+      synchronized (this) {
+        while (!busy && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            closed = true;
+          }
+        }
+        if (!busy)
+          return;
+      }
+      try {
+        front.render();
+        for (OutputManager om : outputs)
+          om.update();
+      } catch (Throwable t) {
+        synchronized (this) {
+          error = t;
+          closed = true;
+        }
+      }
+      synchronized (this) {
+        busy = false;
+        notifyAll();
+      }
+    }
+  }
+  
+  private void await() {
+    while (busy) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        throw new Error(e);
+      }
+    }
+    if (error != null)
+      throw new Error("Problems while rendering frame.", error);
+  }
+}
@@ -0,0 +1,82 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Handle to follow a game scene being constructed in background. The
+ * constructor of the scene may call SceneLoader.report() to tell how much of
+ * its assets were loaded.
+ * @see Game#changeAsync(Callable)
+ * @see Game#pushAsync(Callable)
+ */
+public final class SceneLoader {
+  /**
+   * Tells the progress of the scene being constructed on the current thread.
+   * Does nothing if called from elsewhere.
+   * @param progress A number in [0, 1].
+   */
+  public static void report(float progress) {
+    SceneLoader loader = current.get();
+    if (loader != null)
+      loader.progress = Math.max(0, Math.min(progress, 1));
+  }
+  
+  /**
+   * Query if the construction is finished. The engine changes the scenes
+   * at the end of the frame in which it finished.
+   * @return True if finished.
+   */
+  public boolean isDone() {
+    return done;
+  }
+  
+  /**
+   * Query the progress of the construction.
+   * @return A number in [0, 1], as reported by the scene, or 1 if finished.
+   */
+  public float getProgress() {
+    return progress;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final ThreadLocal<SceneLoader> current = new ThreadLocal<SceneLoader>();
+  
+  private Callable<? extends GameScene> factory;
+  private GameScene scene = null;
+  private Throwable error = null;
+  private volatile float progress = 0;
+  private volatile boolean done = false;
+  
+  SceneLoader(Callable<? extends GameScene> factory) {
+    this.factory = factory;
+  }
+  
+  /**
+   * Engine's private use. Constructs the scene on the current thread.
+   */
+  void load() {
+    current.set(this);
+    try {
+      scene = factory.call();
+      if (scene == null)
+        throw new Error("Scene factory returned null!");
+    } catch (Throwable t) {
+      error = t;
+    } finally {
+      current.remove();
+      progress = 1;
+      done = true;
+    }
+  }
+  
+  /**
+   * Engine's private use.
+   * @return The scene constructed.
+   */
+  GameScene get() {
+    if (error != null)
+      throw new Error("Problems while loading game scene.", error);
+    return scene;
+  }
+}
@@ -0,0 +1,386 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import java.util.List;
+
+/**
+ * Uniform grid of game objects by their bounds, to find the objects in a
+ * rectangle, at a point or nearest to a point without scanning all of them.
+ * Only the cells holding objects take memory, so the world has no limits.
+ * An object added is moved in the grid whenever its bounds are set, and is
+ * removed when destroyed. The cell size should be about the size of the
+ * typical object. The methods are synchronized, so objects of a scene
+ * updated in parallel may move concurrently.
+ * @see GameObject#setBounds(float, float, float, float)
+ * @see GameObjectTreeScene#setSpatialIndex(SpatialIndex)
+ */
+public final class SpatialIndex {
+  /**
+   * Constructor.
+   * @param cellSize Width and height of the cells.
+   */
+  public SpatialIndex(float cellSize) {
+    if (cellSize <= 0)
+      throw new Error("Cell size must be positive!");
+    this.cellSize = cellSize;
+    inverse = 1/cellSize;
+  }
+  
+  /**
+   * Adds a game object. It must have bounds.
+   * @param o Game object.
+   */
+  public synchronized void add(GameObject o) {
+    Bounds b = o.bounds();
+    if (b == null || !b.set)
+      throw new Error("Game object without bounds!");
+    if (b.index == this)
+      return;
+    if (b.index != null)
+      throw new Error("Game object already in another spatial index!");
+    b.index = this;
+    insert(o, b);
+    count++;
+  }
+  
+  /**
+   * Removes a game object.
+   * @param o Game object.
+   */
+  public synchronized void remove(GameObject o) {
+    Bounds b = o.bounds();
+    if (b == null || b.index != this)
+      return;
+    erase(o, b);
+    b.index = null;
+    count--;
+  }
+  
+  /**
+   * Query if a game object was added.
+   * @param o Game object.
+   * @return True if added and not removed yet.
+   */
+  public synchronized boolean contains(GameObject o) {
+    Bounds b = o.bounds();
+    return b != null && b.index == this;
+  }
+  
+  /**
+   * Removes every game object.
+   */
+  public synchronized void clear() {
+    for (int s = 0; s < keys.length; s++) {
+      GameObject[] items = cells[s];
+      if (items == null)
+        continue;
+      for (int k = 0; k < counts[s]; k++) {
+        Bounds b = items[k].bounds();
+        if (b.index == this)
+          b.index = null;
+      }
+      cells[s] = null;
+      counts[s] = 0;
+    }
+    used = count = 0;
+    minCol = minRow = Integer.MAX_VALUE;
+    maxCol = maxRow = Integer.MIN_VALUE;
+  }
+  
+  /**
+   * Get the objects whose bounds overlap a rectangle, each once.
+   * @param x Coordinate x of the top-left corner of the rectangle.
+   * @param y Coordinate y of the top-left corner of the rectangle.
+   * @param w Rectangle width.
+   * @param h Rectangle height.
+   * @param result List to which the objects are added.
+   * @return Number of objects added.
+   */
+  public synchronized int query(float x, float y, float w, float h, List<GameObject> result) {
+    float right = x + w, bottom = y + h;
+    int col0 = cell(x), row0 = cell(y), col1 = cell(right), row1 = cell(bottom), n = 0;
+    if ((long)(col1 - col0 + 1)*(row1 - row0 + 1) > used) {
+      // fewer occupied cells than cells in the rectangle
+      for (int s = 0; s < keys.length; s++) {
+        if (cells[s] == null)
+          continue;
+        int col = (int)keys[s], row = (int)(keys[s] >> 32);
+        if (col >= col0 && col <= col1 && row >= row0 && row <= row1)
+          n += query(s, col, row, col0, row0, x, y, right, bottom, result);
+      }
+      return n;
+    }
+    for (int row = row0; row <= row1; row++) {
+      for (int col = col0; col <= col1; col++) {
+        int s = find(key(col, row));
+        if (s >= 0)
+          n += query(s, col, row, col0, row0, x, y, right, bottom, result);
+      }
+    }
+    return n;
+  }
+  
+  /**
+   * Get the objects whose bounds contain a point.
+   * @param x Coordinate x of the point.
+   * @param y Coordinate y of the point.
+   * @param result List to which the objects are added.
+   * @return Number of objects added.
+   */
+  public synchronized int at(float x, float y, List<GameObject> result) {
+    int s = find(key(cell(x), cell(y))), n = 0;
+    if (s < 0)
+      return 0;
+    GameObject[] items = cells[s];
+    for (int k = 0; k < counts[s]; k++) {
+      if (items[k].bounds().contains(x, y)) {
+        result.add(items[k]);
+        n++;
+      }
+    }
+    return n;
+  }
+  
+  /**
+   * Get the object whose bounds are nearest to a point. Searches the cells
+   * in rings around the point, stopping when no cell left can be nearer.
+   * @param x Coordinate x of the point.
+   * @param y Coordinate y of the point.
+   * @param maxDistance Objects farther are ignored.
+   * @return Nearest object, or null if none within maxDistance.
+   */
+  public synchronized GameObject nearest(float x, float y, float maxDistance) {
+    if (used == 0)
+      return null;
+    GameObject best = null;
+    float bestDistance2 = maxDistance*maxDistance;
+    int col = cell(x), row = cell(y);
+    int rings = Math.max(Math.max(col - minCol, maxCol - col), Math.max(row - minRow, maxRow - row));
+    for (int ring = 0; ring <= rings; ring++) {
+      float d = (ring - 1)*cellSize;
+      if (ring > 0 && d*d > bestDistance2)
+        break;
+      if (8*ring > used) {
+        // the ring has more cells than the grid, so scan the grid
+        for (int s = 0; s < keys.length; s++) {
+          if (cells[s] != null) {
+            GameObject o = nearest(s, x, y, bestDistance2);
+            if (o != null) {
+              best = o;
+              bestDistance2 = o.bounds().distance2(x, y);
+            }
+          }
+        }
+        break;
+      }
+      for (int i = -ring; i <= ring; i++) {
+        for (int j = -ring; j <= ring; j += (i == -ring || i == ring) ? 1 : 2*ring) {
+          int s = find(key(col + j, row + i));
+          if (s < 0)
+            continue;
+          GameObject o = nearest(s, x, y, bestDistance2);
+          if (o != null) {
+            best = o;
+            bestDistance2 = o.bounds().distance2(x, y);
+          }
+        }
+      }
+    }
+    return best;
+  }
+  
+  /**
+   * Get the number of objects.
+   * @return Number of objects added and not removed yet.
+   */
+  public synchronized int size() {
+    return count;
+  }
+  
+  /**
+   * @return Width and height of the cells.
+   */
+  public float getCellSize() {
+    return cellSize;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private float cellSize, inverse;
+  private int count = 0, used = 0;
+  private int minCol = Integer.MAX_VALUE, minRow = Integer.MAX_VALUE;
+  private int maxCol = Integer.MIN_VALUE, maxRow = Integer.MIN_VALUE;
+  
+  // cells by open addressing with linear probing, null where free
+  private long[] keys = new long[16];
+  private GameObject[][] cells = new GameObject[16][];
+  private int[] counts = new int[16];
+  
+  /**
+   * Engine's private use. Moves an object whose bounds were set.
+   */
+  synchronized void move(GameObject o) {
+    Bounds b = o.bounds();
+    if (b.index != this)
+      return;
+    if (!b.set) {
+      remove(o);
+      return;
+    }
+    if (cell(b.left) == b.col0 && cell(b.top) == b.row0 && cell(b.right) == b.col1 && cell(b.bottom) == b.row1)
+      return;
+    erase(o, b);
+    insert(o, b);
+  }
+  
+  private int cell(float coord) {
+    return (int)Math.floor(coord*inverse);
+  }
+  
+  private static long key(int col, int row) {
+    return ((long)row << 32) | (col & 0xFFFFFFFFL);
+  }
+  
+  private static int hash(long key) {
+    key *= 0x9E3779B97F4A7C15L;
+    return (int)(key ^ (key >>> 32));
+  }
+  
+  private int find(long key) {
+    int mask = keys.length - 1;
+    for (int s = hash(key) & mask; cells[s] != null; s = (s + 1) & mask) {
+      if (keys[s] == key)
+        return s;
+    }
+    return -1;
+  }
+  
+  private void insert(GameObject o, Bounds b) {
+    b.col0 = cell(b.left);
+    b.row0 = cell(b.top);
+    b.col1 = cell(b.right);
+    b.row1 = cell(b.bottom);
+    minCol = Math.min(minCol, b.col0);
+    minRow = Math.min(minRow, b.row0);
+    maxCol = Math.max(maxCol, b.col1);
+    maxRow = Math.max(maxRow, b.row1);
+    for (int row = b.row0; row <= b.row1; row++) {
+      for (int col = b.col0; col <= b.col1; col++)
+        put(key(col, row), o);
+    }
+  }
+  
+  private void erase(GameObject o, Bounds b) {
+    for (int row = b.row0; row <= b.row1; row++) {
+      for (int col = b.col0; col <= b.col1; col++) {
+        int s = find(key(col, row));
+        if (s < 0)
+          continue;
+        GameObject[] items = cells[s];
+        int n = counts[s];
+        for (int k = 0; k < n; k++) {
+          if (items[k] == o) {
+            items[k] = items[--n];
+            items[n] = null;
+            break;
+          }
+        }
+        counts[s] = n;
+        if (n == 0)
+          delete(s);
+      }
+    }
+  }
+  
+  private void put(long key, GameObject o) {
+    int s = find(key);
+    if (s < 0) {
+      if (2*(used + 1) > keys.length)
+        rehash(2*keys.length);
+      int mask = keys.length - 1;
+      for (s = hash(key) & mask; cells[s] != null; s = (s + 1) & mask);
+      keys[s] = key;
+      cells[s] = new GameObject[4];
+      used++;
+    }
+    GameObject[] items = cells[s];
+    if (counts[s] == items.length) {
+      GameObject[] tmp = new GameObject[2*items.length];
+      System.arraycopy(items, 0, tmp, 0, items.length);
+      cells[s] = items = tmp;
+    }
+    items[counts[s]++] = o;
+  }
+  
+  /**
+   * Frees a slot, shifting back the cells probed past it.
+   */
+  private void delete(int s) {
+    int mask = keys.length - 1;
+    cells[s] = null;
+    used--;
+    for (int next = (s + 1) & mask; cells[next] != null; next = (next + 1) & mask) {
+      int home = hash(keys[next]) & mask;
+      // move the cell back if its home is not in (s, next]
+      if ((next > s && (home <= s || home > next)) || (next < s && home <= s && home > next)) {
+        keys[s] = keys[next];
+        cells[s] = cells[next];
+        counts[s] = counts[next];
+        cells[next] = null;
+        counts[next] = 0;
+        s = next;
+      }
+    }
+  }
+  
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    GameObject[][] oldCells = cells;
+    int[] oldCounts = counts;
+    keys = new long[capacity];
+    cells = new GameObject[capacity][];
+    counts = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldCells[i] == null)
+        continue;
+      int s = hash(oldKeys[i]) & mask;
+      while (cells[s] != null)
+        s = (s + 1) & mask;
+      keys[s] = oldKeys[i];
+      cells[s] = oldCells[i];
+      counts[s] = oldCounts[i];
+    }
+  }
+  
+  /**
+   * Adds the objects of a cell overlapping a rectangle. An object in many
+   * cells is added only from the first cell it shares with the rectangle.
+   */
+  private int query(int s, int col, int row, int col0, int row0, float left, float top, float right, float bottom, List<GameObject> result) {
+    GameObject[] items = cells[s];
+    int n = 0;
+    for (int k = 0; k < counts[s]; k++) {
+      Bounds b = items[k].bounds();
+      if (col != Math.max(b.col0, col0) || row != Math.max(b.row0, row0))
+        continue;
+      if (b.overlaps(left, top, right, bottom)) {
+        result.add(items[k]);
+        n++;
+      }
+    }
+    return n;
+  }
+  
+  private GameObject nearest(int s, float x, float y, float bestDistance2) {
+    GameObject[] items = cells[s];
+    GameObject best = null;
+    for (int k = 0; k < counts[s]; k++) {
+      float d = items[k].bounds().distance2(x, y);
+      if (d <= bestDistance2) {
+        best = items[k];
+        bestDistance2 = d;
+      }
+    }
+    return best;
+  }
+}
@@ -22,7 +22,7 @@ public class DeltaTime {
     if (ups > 0) {
       this.ups = ups;
       dtFloat = 1/(float)ups;
-      dtFixed = 1000/ups;
+      dtFixed = 1000000000L/ups;
     }
   }
   
@@ -34,57 +34,175 @@ public class DeltaTime {
     return dtFloat;
   }
   
+  /**
+   * The time interval between two updates.
+   * @return Time in nanoseconds.
+   */
+  public long getNanoDT() {
+    return dtFixed;
+  }
+  
   /**
    * @return Update's unique ID.
    */
   public long updateID() {
     return updateID;
   }
+  
+  /**
+   * Query the fixed step mode.
+   * @return True if the fixed step mode is enabled.
+   */
+  public boolean isFixedStep() {
+    return fixedStep;
+  }
+  
+  /**
+   * Enables or disables the fixed step mode. In fixed step mode, the scenes
+   * are updated as many times per frame as needed to keep the update rate,
+   * and the frames are rendered as fast as possible. The initial mode is
+   * disabled, i.e., one update per frame and sleep for the time left.
+   * @param fixedStep Pass true to enable the fixed step mode.
+   */
+  public void setFixedStep(boolean fixedStep) {
+    if (this.fixedStep == fixedStep)
+      return;
+    this.fixedStep = fixedStep;
+    accumulator = 0;
+    alpha = 0;
+  }
+  
+  /**
+   * The maximum number of updates in a single frame, in fixed step mode.
+   * @return Maximum number of updates per frame.
+   */
+  public int getMaxUpdatesPerFrame() {
+    return maxUpdates;
+  }
+  
+  /**
+   * Sets the maximum number of updates in a single frame, in fixed step mode.
+   * When a frame takes longer than this number of updates, the time left is
+   * discarded and the game slows down, instead of falling behind forever.
+   * The initial value is 5.
+   * @param maxUpdates Maximum number of updates per frame.
+   */
+  public void setMaxUpdatesPerFrame(int maxUpdates) {
+    if (maxUpdates > 0)
+      this.maxUpdates = maxUpdates;
+  }
+  
+  /**
+   * The fraction of the update interval accumulated after the last update of
+   * the current frame. Use it to interpolate states between the last two
+   * updates when rendering in fixed step mode.
+   * @return A number in [0, 1). Always zero if not in fixed step mode.
+   */
+  public float getAlpha() {
+    return alpha;
+  }
+  
+  /**
+   * Query the unthrottled mode.
+   * @return True if the unthrottled mode is enabled.
+   */
+  public boolean isUnthrottled() {
+    return unthrottled;
+  }
+  
+  /**
+   * Enables or disables the unthrottled mode, in which the scenes are updated
+   * exactly once per frame without waiting for the update interval, even in
+   * fixed step mode. Use it to measure throughput, e.g. in benchmarks.
+   * @param unthrottled Pass true to enable the unthrottled mode.
+   */
+  public void setUnthrottled(boolean unthrottled) {
+    this.unthrottled = unthrottled;
+  }
 //==============================================================================
 //nothings else matters from here to below
 //==============================================================================
-  private long last = 0;            // unit: milliseconds
+  private long last = 0;            // unit: nanoseconds
   private int ups = 32;             // unit: updates/second
   private float dtFloat = 0.03125f; // unit: seconds
-  private int dtFixed = 31;         // unit: milliseconds
-  private long dt = 0;              // unit: milliseconds
+  private long dtFixed = 31250000;  // unit: nanoseconds
+  private long dt = 0;              // unit: nanoseconds
   private long updateID = 0;
+  private boolean fixedStep = false;
+  private long accumulator = 0;     // unit: nanoseconds
+  private int maxUpdates = 5;       // unit: updates/frame
+  private int updates = 0;          // unit: updates
+  private float alpha = 0;          // unit: updates
+  private FramePacer pacer = new FramePacer();
+  private boolean unthrottled = false;
   
   /**
    * Engine's private use.
    */
   public DeltaTime() {
-    last = Time.get() - dtFixed;
+    last = Time.getNano() - dtFixed;
   }
   
   /**
    * Engine's private use.
    */
   public void update() {
-    long now = Time.get();
+    long now = Time.getNano();
     dt = now - last;
     last = now;
-    updateID = now - 1;
+    if (fixedStep) {
+      accumulator += dt;
+      updates = 0;
+    }
+    else
+      updateID = now - 1;
   }
   
-  public void sleepDt(){
-	  long now = Time.get();
-	  long deltaSpent = now - last;
-	  long deltaLeft = dtFixed - deltaSpent; 
-	  if (deltaLeft > 0) {
-	      try {
-			Thread.sleep(deltaLeft);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-	      updateID++;
-	  }
+  /**
+   * Engine's private use. Waits for the time left in the update interval.
+   */
+  public void sleepDt() {
+    if (unthrottled) {
+      updateID++;
+      return;
+    }
+    long deadline = last + dtFixed;
+    if (deadline - Time.getNano() > 0) {
+      pacer.waitUntil(deadline);
+      updateID++;
+    }
+  }
+  
+  /**
+   * Engine's private use. Consumes one update interval from the time
+   * accumulated in fixed step mode.
+   * @return True if the scenes must be updated once more in this frame.
+   */
+  public boolean dtReachedLimit() {
+    if (unthrottled) {
+      accumulator = 0;
+      if (updates > 0)
+        return false;
+      updates++;
+      updateID++;
+      return true;
+    }
+    if (accumulator < dtFixed)
+      return false;
+    if (updates >= maxUpdates) {
+      accumulator %= dtFixed;
+      return false;
+    }
+    accumulator -= dtFixed;
+    updates++;
+    updateID++;
+    return true;
   }
   
   /**
    * Engine's private use.
    */
   public void accumulate() {
-//    last -= dt;
+    alpha = fixedStep ? accumulator/(float)dtFixed : 0;
   }
 }
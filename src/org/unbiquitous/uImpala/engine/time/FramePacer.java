@@ -0,0 +1,57 @@
+package org.unbiquitous.uImpala.engine.time;
+
+/**
+ * Class to wait until a point in time with sub-millisecond precision.
+ * Thread.sleep() alone usually wakes up a millisecond or two late, so the
+ * pacer sleeps only while the deadline is far, then yields and finally spins
+ * for the last fraction of a millisecond. The sleep overshoot of the system
+ * is measured on every wait, to sleep as much as possible without missing
+ * the deadline.
+ */
+public class FramePacer {
+  /**
+   * Blocks the current thread until the deadline.
+   * @param deadline Time in nanoseconds, as given by Time.getNano().
+   */
+  public void waitUntil(long deadline) {
+    long left = deadline - Time.getNano();
+    long sleep = left - oversleep - SPIN_WINDOW;
+    if (sleep > 0) {
+      long before = Time.getNano();
+      try {
+        Thread.sleep(sleep/1000000, (int)(sleep%1000000));
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+      measure(Time.getNano() - before - sleep);
+    }
+    while ((left = deadline - Time.getNano()) > 0) {
+      if (left > YIELD_LIMIT)
+        Thread.yield();
+    }
+  }
+  
+  /**
+   * The current estimate of how late Thread.sleep() wakes up.
+   * @return Time in nanoseconds.
+   */
+  public long getOversleep() {
+    return oversleep;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final long SPIN_WINDOW   = 200000;  // unit: nanoseconds
+  private static final long YIELD_LIMIT   = 50000;   // unit: nanoseconds
+  private static final long MAX_OVERSLEEP = 5000000; // unit: nanoseconds
+  
+  private long oversleep = 1000000;                  // unit: nanoseconds
+  
+  private void measure(long overshoot) {
+    // rise at once to avoid missing the next deadline, fall slowly
+    if (overshoot > oversleep)
+      oversleep = Math.min(overshoot, MAX_OVERSLEEP);
+    else
+      oversleep = Math.max(oversleep + (overshoot - oversleep)/16, 0);
+  }
+}
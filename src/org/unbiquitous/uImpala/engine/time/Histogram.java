@@ -0,0 +1,120 @@
+package org.unbiquitous.uImpala.engine.time;
+
+/**
+ * Histogram of the last durations recorded, with logarithmic buckets. Each
+ * octave is split in four buckets, so percentiles are approximated within
+ * 25%. Recording takes constant time and does not allocate.
+ */
+public class Histogram {
+  /**
+   * Constructor for a window of 256 durations.
+   */
+  public Histogram() {
+    this(256);
+  }
+  
+  /**
+   * Constructor.
+   * @param window Number of durations to keep. Older durations are discarded.
+   */
+  public Histogram(int window) {
+    samples = new long[window > 0 ? window : 1];
+  }
+  
+  /**
+   * Records a duration, discarding the oldest one if the window is full.
+   * @param ns Duration in nanoseconds.
+   */
+  public void record(long ns) {
+    if (ns < 0)
+      ns = 0;
+    if (count == samples.length) {
+      long old = samples[next];
+      buckets[bucket(old)]--;
+      sum -= old;
+    }
+    else
+      count++;
+    samples[next] = ns;
+    buckets[bucket(ns)]++;
+    sum += ns;
+    next = (next + 1) % samples.length;
+  }
+  
+  /**
+   * Discards all durations.
+   */
+  public void reset() {
+    count = 0;
+    next = 0;
+    sum = 0;
+    for (int i = 0; i < BUCKETS; i++)
+      buckets[i] = 0;
+  }
+  
+  /**
+   * @return Number of durations in the window.
+   */
+  public int count() {
+    return count;
+  }
+  
+  /**
+   * @return Mean of the durations in the window, in nanoseconds.
+   */
+  public long mean() {
+    return count > 0 ? sum/count : 0;
+  }
+  
+  /**
+   * @return Longest duration in the window, in nanoseconds.
+   */
+  public long max() {
+    long max = 0;
+    for (int i = 0; i < count; i++)
+      max = Math.max(max, samples[i]);
+    return max;
+  }
+  
+  /**
+   * Approximates a percentile of the durations in the window.
+   * @param p Percentile in [0, 100].
+   * @return Upper bound of the bucket of the percentile, in nanoseconds.
+   */
+  public long percentile(double p) {
+    if (count == 0)
+      return 0;
+    long rank = Math.max((long)Math.ceil(p*count/100), 1);
+    long accumulated = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      accumulated += buckets[i];
+      if (accumulated >= rank)
+        return Math.min(upper(i), max());
+    }
+    return max();
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final int BUCKETS = 256;
+  
+  private long[] samples;                 // unit: nanoseconds
+  private int[] buckets = new int[BUCKETS];
+  private int count = 0, next = 0;
+  private long sum = 0;                   // unit: nanoseconds
+  
+  private static int bucket(long ns) {
+    if (ns < 4)
+      return (int)ns;
+    int log = 63 - Long.numberOfLeadingZeros(ns);
+    return (log << 2) | (int)((ns >>> (log - 2)) & 3);
+  }
+  
+  private static long upper(int bucket) {
+    if (bucket < 4)
+      return bucket;
+    int log = bucket >> 2;
+    long first = (4L | (bucket & 3)) << (log - 2);
+    return first + (1L << (log - 2)) - 1;
+  }
+}
@@ -0,0 +1,16 @@
+package org.unbiquitous.uImpala.engine.time;
+
+/**
+ * Time implementation based on System.nanoTime(). The values are monotonic,
+ * i.e., not affected by changes of the wall clock, and only meaningful when
+ * compared to each other.
+ */
+public class MonotonicTime extends Time {
+  protected long getTime() {
+    return System.nanoTime()/1000000;
+  }
+  
+  protected long getNanoTime() {
+    return System.nanoTime();
+  }
+}
@@ -12,7 +12,7 @@ public class Stopwatch {
   public void start() {
     started = true;
     paused = false;
-    initialTime = Time.get();
+    initialTime = Time.getNano();
   }
   
   /**
@@ -21,7 +21,7 @@ public class Stopwatch {
   public void pause() {
     if (!paused) {
       paused = true;
-      pauseTime = Time.get();
+      pauseTime = Time.getNano();
     }
   }
   
@@ -31,7 +31,7 @@ public class Stopwatch {
   public void resume() {
     if (paused) {
       paused = false;
-      initialTime += Time.get() - pauseTime;
+      initialTime += Time.getNano() - pauseTime;
     }
   }
   
@@ -47,13 +47,21 @@ public class Stopwatch {
    * @return Time in milliseconds.
    */
   public long time() {
+    return timeNano()/1000000;
+  }
+  
+  /**
+   * Query the time counted.
+   * @return Time in nanoseconds.
+   */
+  public long timeNano() {
     if (!started)
       return 0;
     if (paused)
       return pauseTime - initialTime;
-    return Time.get() - initialTime;
+    return Time.getNano() - initialTime;
   }
   
   private boolean started = false, paused = false;
-  private long initialTime = 0, pauseTime = 0;
+  private long initialTime = 0, pauseTime = 0; // unit: nanoseconds
 }
@@ -1,7 +1,9 @@
 package org.unbiquitous.uImpala.engine.time;
 
 /**
- * Class to access the system time in milliseconds.
+ * Class to access the system time in milliseconds or nanoseconds. The default
+ * implementation is MonotonicTime.
+ * @see MonotonicTime
  * @author Pimenta
  *
  */
@@ -14,11 +16,28 @@ public abstract class Time {
     return time.getTime();
   }
   
+  /**
+   * Method to access the system time with the highest resolution available.
+   * @return System time in nanoseconds.
+   */
+  public static long getNano() {
+    return time.getNanoTime();
+  }
+  
   /**
    * Method to access the system time.
    * @return System time in milliseconds.
    */
   protected abstract long getTime();
   
-  protected static Time time = null;
+  /**
+   * Method to access the system time. Override it in implementations with
+   * access to a clock of higher resolution than milliseconds.
+   * @return System time in nanoseconds.
+   */
+  protected long getNanoTime() {
+    return getTime()*1000000;
+  }
+  
+  protected static Time time = new MonotonicTime();
 }
@@ -0,0 +1,275 @@
+package org.unbiquitous.uImpala.engine.time;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Class to record a timeline of spans (game loop phases, scene updates,
+ * event dispatches, asset loads, ...) into a preallocated ring buffer, which
+ * can be dumped in the Chrome trace event format (chrome://tracing). The
+ * buffer can also be dumped automatically to a file whenever a frame takes
+ * longer than a budget. Disabled by default; while disabled, each span costs
+ * a single branch.
+ */
+public final class Tracer {
+  /**
+   * Query the recording state.
+   * @return True if recording.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+  
+  /**
+   * Starts or stops recording. The buffer is allocated on the first start.
+   * @param enabled Pass true to start recording.
+   */
+  public static synchronized void setEnabled(boolean enabled) {
+    if (enabled && names == null) {
+      types = new char[CAPACITY];
+      cats = new String[CAPACITY];
+      names = new String[CAPACITY];
+      times = new long[CAPACITY];
+      durations = new long[CAPACITY];
+      threads = new long[CAPACITY];
+      args = new int[CAPACITY];
+    }
+    Tracer.enabled = enabled;
+  }
+  
+  /**
+   * Sets the frame budget. When a frame takes longer than the budget, the
+   * buffer is written to a new file in the directory, at most once a second.
+   * @param ns Budget in nanoseconds. Zero or less disables automatic dumps.
+   * @param dir Directory for the dump files.
+   */
+  public static synchronized void setFrameBudget(long ns, String dir) {
+    budget = ns;
+    Tracer.dir = dir;
+  }
+  
+  /**
+   * Opens a span on the current thread.
+   * @param cat Category of the span.
+   * @param name Name of the span.
+   */
+  public static void begin(String cat, String name) {
+    if (enabled)
+      record('B', cat, name, Time.getNano(), 0, -1);
+  }
+  
+  /**
+   * Opens a span on the current thread, named after a class.
+   * @param cat Category of the span.
+   * @param c Class whose name will name the span.
+   */
+  public static void begin(String cat, Class<?> c) {
+    if (enabled)
+      record('B', cat, c.getName(), Time.getNano(), 0, -1);
+  }
+  
+  /**
+   * Opens a span on the current thread, named after a class.
+   * @param cat Category of the span.
+   * @param c Class whose name will name the span.
+   * @param arg A non-negative number to show in the span, e.g. an event type.
+   */
+  public static void begin(String cat, Class<?> c, int arg) {
+    if (enabled)
+      record('B', cat, c.getName(), Time.getNano(), 0, arg);
+  }
+  
+  /**
+   * Closes the last span opened on the current thread.
+   */
+  public static void end() {
+    if (enabled)
+      record('E', null, null, Time.getNano(), 0, -1);
+  }
+  
+  /**
+   * Records a span already measured.
+   * @param cat Category of the span.
+   * @param name Name of the span.
+   * @param start Time in nanoseconds, as given by Time.getNano().
+   * @param end Time in nanoseconds, as given by Time.getNano().
+   */
+  public static void span(String cat, String name, long start, long end) {
+    if (enabled)
+      record('X', cat, name, start, end - start, -1);
+  }
+  
+  /**
+   * Engine's private use. Records a frame and checks the frame budget.
+   * @param start Time in nanoseconds, as given by Time.getNano().
+   * @param end Time in nanoseconds, as given by Time.getNano().
+   */
+  public static void frame(long start, long end) {
+    if (!enabled)
+      return;
+    record('X', "loop", "FRAME", start, end - start, -1);
+    if (budget > 0 && end - start > budget && end - lastDump > DUMP_INTERVAL) {
+      lastDump = end;
+      final Snapshot snapshot = snapshot();
+      final File file = new File(dir, "uImpala-trace-" + System.currentTimeMillis() + ".json");
+      Thread t = new Thread(new Runnable() {
+        public void run() {
+          try {
+            snapshot.write(file);
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+        }
+      }, "uImpala-trace-dump");
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+  
+  /**
+   * Writes the buffer in the Chrome trace event format.
+   * @param out Destination.
+   * @throws IOException If writing fails.
+   */
+  public static void dump(Writer out) throws IOException {
+    snapshot().write(out);
+  }
+  
+  /**
+   * Writes the buffer in the Chrome trace event format to a file.
+   * @param path File path.
+   */
+  public static void dump(String path) {
+    try {
+      snapshot().write(new File(path));
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+  
+  /**
+   * Discards all spans recorded.
+   */
+  public static synchronized void clear() {
+    next = 0;
+    count = 0;
+  }
+//==============================================================================
+//nothings else matters from here to below
+//==============================================================================
+  private static final int CAPACITY = 1 << 16;
+  private static final long DUMP_INTERVAL = 1000000000; // unit: nanoseconds
+  
+  private static volatile boolean enabled = false;
+  private static char[] types;
+  private static String[] cats, names;
+  private static long[] times, durations;               // unit: nanoseconds
+  private static long[] threads;
+  private static int[] args;
+  private static int next = 0, count = 0;
+  private static long budget = 0, lastDump = 0;         // unit: nanoseconds
+  private static String dir = ".";
+  
+  private static synchronized void record(char type, String cat, String name, long time, long duration, int arg) {
+    if (names == null)
+      return;
+    types[next] = type;
+    cats[next] = cat;
+    names[next] = name;
+    times[next] = time;
+    durations[next] = duration;
+    threads[next] = Thread.currentThread().getId();
+    args[next] = arg;
+    next = (next + 1) & (CAPACITY - 1);
+    if (count < CAPACITY)
+      count++;
+  }
+  
+  private static synchronized Snapshot snapshot() {
+    Snapshot s = new Snapshot(count);
+    int first = (next - count) & (CAPACITY - 1);
+    for (int i = 0; i < count; i++) {
+      int j = (first + i) & (CAPACITY - 1);
+      s.types[i] = types[j];
+      s.cats[i] = cats[j];
+      s.names[i] = names[j];
+      s.times[i] = times[j];
+      s.durations[i] = durations[j];
+      s.threads[i] = threads[j];
+      s.args[i] = args[j];
+    }
+    return s;
+  }
+  
+  private static final class Snapshot {
+    private char[] types;
+    private String[] cats, names;
+    private long[] times, durations, threads;
+    private int[] args;
+  
+    private Snapshot(int size) {
+      types = new char[size];
+      cats = new String[size];
+      names = new String[size];
+      times = new long[size];
+      durations = new long[size];
+      threads = new long[size];
+      args = new int[size];
+    }
+  
+    private void write(File file) throws IOException {
+      Writer out = new BufferedWriter(new FileWriter(file));
+      try {
+        write(out);
+      } finally {
+        out.close();
+      }
+    }
+  
+    private void write(Writer out) throws IOException {
+      long base = Long.MAX_VALUE;
+      for (long time : times)
+        base = Math.min(base, time);
+      out.write("{\"traceEvents\":[");
+      for (int i = 0; i < types.length; i++) {
+        out.write(i == 0 ? "\n" : ",\n");
+        out.write("{\"ph\":\"" + types[i] + "\"");
+        if (names[i] != null)
+          out.write(",\"cat\":" + quote(cats[i]) + ",\"name\":" + quote(names[i]));
+        out.write(",\"ts\":" + micros(times[i] - base));
+        if (types[i] == 'X')
+          out.write(",\"dur\":" + micros(durations[i]));
+        out.write(",\"pid\":0,\"tid\":" + threads[i]);
+        if (args[i] >= 0)
+          out.write(",\"args\":{\"arg\":" + args[i] + "}");
+        out.write("}");
+      }
+      out.write("\n]}\n");
+      out.flush();
+    }
+  
+    private static String micros(long ns) {
+      long frac = Math.abs(ns%1000);
+      return (ns/1000) + "." + (frac < 10 ? "00" : frac < 100 ? "0" : "") + frac;
+    }
+  
+    private static String quote(String s) {
+      if (s == null)
+        return "\"\"";
+      StringBuilder sb = new StringBuilder("\"");
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        if (c == '"' || c == '\\')
+          sb.append('\\').append(c);
+        else if (c < ' ')
+          sb.append(String.format("\\u%04x", (int)c));
+        else
+          sb.append(c);
+      }
+      return sb.append('"').toString();
+    }
+  }
+}
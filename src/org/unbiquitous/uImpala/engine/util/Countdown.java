@@ -18,10 +18,18 @@ public class Countdown extends GameObject implements Subject {
    * @param ms Time to countdown in milliseconds.
    */
   public void start(long ms) {
-    if (ms > 0) {
+    startNano(ms*1000000);
+  }
+  
+  /**
+   * Starts the countdown. If already counting, starts over.
+   * @param ns Time to countdown in nanoseconds.
+   */
+  public void startNano(long ns) {
+    if (ns > 0) {
       started = true;
       paused = false;
-      finalTime = Time.get() + ms;
+      finalTime = Time.getNano() + ns;
     }
   }
   
@@ -31,7 +39,7 @@ public class Countdown extends GameObject implements Subject {
   public void pause() {
     if (!paused) {
       paused = true;
-      pauseTime = Time.get();
+      pauseTime = Time.getNano();
     }
   }
   
@@ -41,7 +49,7 @@ public class Countdown extends GameObject implements Subject {
   public void resume() {
     if (paused) {
       paused = false;
-      finalTime += Time.get() - pauseTime;
+      finalTime += Time.getNano() - pauseTime;
     }
   }
   
@@ -57,11 +65,19 @@ public class Countdown extends GameObject implements Subject {
    * @return Time in milliseconds.
    */
   public long time() {
+    return timeNano()/1000000;
+  }
+  
+  /**
+   * Query the time remaining.
+   * @return Time in nanoseconds.
+   */
+  public long timeNano() {
     if (!started)
       return 0;
     if (paused)
       return finalTime - pauseTime;
-    return finalTime - Time.get();
+    return finalTime - Time.getNano();
   }
   
   /**
@@ -73,7 +89,7 @@ public class Countdown extends GameObject implements Subject {
    * Call this method to notify observers.
    */
   public void update() {
-    if (started && !paused && Time.get() >= finalTime) {
+    if (started && !paused && Time.getNano() >= finalTime) {
       started = false;
       observations.broadcast(EVENT_COMPLETE);
     }
@@ -89,7 +105,7 @@ public class Countdown extends GameObject implements Subject {
   
   private Observations observations = new Observations(this, EVENT_COMPLETE);
   private boolean started = false, paused = false;
-  private long finalTime = 0, pauseTime = 0;
+  private long finalTime = 0, pauseTime = 0; // unit: nanoseconds
   
   protected void render(GameRenderers renderers) {
     
@@ -108,7 +108,7 @@ public class StringInput extends GameObject {
   }
   
   protected void keyDown(Event event, Subject subject) {
-    if (frozen)
+    if (isFrozen())
       return;
     KeyboardEvent ev = (KeyboardEvent)event;
     int k = ev.getKey();
@@ -6,6 +6,8 @@ import java.util.LinkedList;
 import java.util.Map.Entry;
 import java.util.Queue;
 
+import org.unbiquitous.uImpala.engine.time.Tracer;
+
 /**
  * Class to hold all observations of a subject.
  * @author Pimenta
@@ -82,7 +84,7 @@ public final class Observations {
       throw new Error("Event type " + event_type + " missing");
     
     // add event occurrence to queue
-    queue.add(new EventOccurrence(event, subj_event));
+    queue.add(new EventOccurrence(event_type, event, subj_event));
     
     // return if this is already broadcasting
     if (broadcasting)
@@ -90,8 +92,15 @@ public final class Observations {
     
     // process queue
     broadcasting = true;
-    while (queue.size() > 0) // process
-      queue.poll().notifyObservers(subject);
+    while (queue.size() > 0) { // process
+      EventOccurrence occurrence = queue.poll();
+      Tracer.begin("broadcast", subject == null ? Observations.class : subject.getClass(), occurrence.type);
+      try {
+        occurrence.notifyObservers(subject);
+      } finally {
+        Tracer.end();
+      }
+    }
     broadcasting = false;
   }
   
@@ -156,9 +165,11 @@ public final class Observations {
   }
   
   private static final class EventOccurrence {
+    private int type;
     private Event data;
     private EventObservations observations;
-    private EventOccurrence(Event d, EventObservations obs) {
+    private EventOccurrence(int t, Event d, EventObservations obs) {
+      type = t;
       data = d != null ? d : new Event();
       observations = new EventObservations(obs);
     }
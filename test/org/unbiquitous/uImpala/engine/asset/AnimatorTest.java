@@ -0,0 +1,110 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+
+public class AnimatorTest {
+  
+	private static Animation animation(Animator animator, int frames, float fps) {
+		return new Animation(new NullSprite(10*frames, 10), frames, fps, animator);
+	}
+  
+	@Test public void advancesEveryRunningAnimation(){
+		Animator animator = new Animator();
+		Animation slow = animation(animator, 4, 2), fast = animation(animator, 4, 6);
+		animator.update(0.5f);
+		assertThat(slow.getFrame()).isEqualTo(1f);
+		assertThat(fast.getFrame()).isEqualTo(3f);
+		fast.pause();
+		animator.update(0.5f);
+		assertThat(slow.getFrame()).isEqualTo(2f);
+		assertThat(fast.getFrame()).isEqualTo(3f);
+		fast.resume();
+		animator.update(0.5f);
+		assertThat(fast.getFrame()).isEqualTo(2f);
+	}
+  
+	@Test public void pauseAndTimeScaleApplyToAll(){
+		Animator animator = new Animator();
+		Animation animation = animation(animator, 8, 1);
+		animator.setPaused(true);
+		animator.update(1);
+		assertThat(animation.getFrame()).isEqualTo(0f);
+		animator.setPaused(false);
+		animator.setTimeScale(2);
+		animator.update(1);
+		assertThat(animation.getFrame()).isEqualTo(2f);
+		Animator.setGlobalTimeScale(0.5f);
+		try {
+			animator.update(1);
+		} finally {
+			Animator.setGlobalTimeScale(1);
+		}
+		assertThat(animation.getFrame()).isEqualTo(3f);
+	}
+  
+	@Test public void disposeKeepsTheOthers(){
+		Animator animator = new Animator();
+		Animation a = animation(animator, 4, 1), b = animation(animator, 4, 2), c = animation(animator, 4, 3);
+		animator.update(1);
+		a.dispose();
+		assertThat(animator.size()).isEqualTo(2);
+		assertThat(a.getFrame()).isEqualTo(1f);
+		animator.update(0.5f);
+		assertThat(a.getFrame()).isEqualTo(1f);
+		assertThat(b.getFrame()).isEqualTo(3f);
+		assertThat(c.getFrame()).isEqualTo(0.5f);
+		animator.clear();
+		assertThat(animator.size()).isEqualTo(0);
+		assertThat(c.getFrame()).isEqualTo(0.5f);
+	}
+  
+	@Test public void removesAnimationsNoLongerReferenced() throws InterruptedException {
+		Animator animator = new Animator();
+		Animation kept = animation(animator, 4, 1);
+		for (int i = 0; i < 100; i++)
+			animation(animator, 4, 1);
+		for (int tries = 0; tries < 50 && animator.size() > 1; tries++) {
+			System.gc();
+			Thread.sleep(10);
+			animator.update(0);
+		}
+		assertThat(animator.size()).isEqualTo(1);
+		animator.update(1);
+		assertThat(kept.getFrame()).isEqualTo(1f);
+	}
+  
+	@Test public void addsAnimationsFromOtherThreadsWhileUpdating() throws InterruptedException {
+		final Animator animator = new Animator();
+		final Animation[][] created = new Animation[4][500];
+		Thread[] workers = new Thread[created.length];
+		for (int t = 0; t < workers.length; t++) {
+			final Animation[] mine = created[t];
+			workers[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < mine.length; i++) {
+						mine[i] = animation(animator, 4, 1);
+						if (i % 2 == 1)
+							mine[i - 1].dispose();
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			while (worker.isAlive())
+				animator.update(0.25f);
+			worker.join();
+		}
+		assertThat(animator.size()).isEqualTo(workers.length*250);
+		for (Animation[] mine : created) {
+			for (int i = 1; i < mine.length; i += 2)
+				mine[i].setFrame(3);
+		}
+		animator.update(0.5f);
+		for (Animation[] mine : created) {
+			for (int i = 1; i < mine.length; i += 2)
+				assertThat(mine[i].getFrame()).isEqualTo(3.5f);
+		}
+	}
+}
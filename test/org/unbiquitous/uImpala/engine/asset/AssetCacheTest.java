@@ -0,0 +1,101 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AssetCacheTest {
+  
+	private static class Counter extends AssetCache.Loader<Object> {
+		int loads = 0, disposes = 0;
+		public Object load() {
+			loads++;
+			return new Object();
+		}
+		public long size(Object asset) {
+			return 100;
+		}
+		public void dispose(Object asset) {
+			disposes++;
+		}
+	}
+	
+	@Before public void setUp(){
+		AssetCache.trim();
+		AssetCache.setBudget(64L << 20);
+	}
+	
+	@Test public void loadsOnlyOnceWhileReferenced(){
+		Counter c = new Counter();
+		Object a = AssetCache.acquire("a", c);
+		Object b = AssetCache.acquire("a", c);
+		assertThat(b).isSameAs(a);
+		assertThat(c.loads).isEqualTo(1);
+		assertThat(AssetCache.getSize()).isEqualTo(100L);
+		AssetCache.release("a");
+		AssetCache.release("a");
+	}
+	
+	@Test public void keepsUnreferencedAssetsWithinBudget(){
+		Counter c = new Counter();
+		Object a = AssetCache.acquire("a", c);
+		AssetCache.release("a");
+		assertThat(AssetCache.acquire("a", c)).isSameAs(a);
+		assertThat(c.loads).isEqualTo(1);
+		AssetCache.release("a");
+	}
+	
+	@Test public void evictsLeastRecentlyUsedOverBudget(){
+		Counter c = new Counter();
+		AssetCache.setBudget(200);
+		AssetCache.acquire("a", c);
+		AssetCache.acquire("b", c);
+		AssetCache.release("a");
+		AssetCache.release("b");
+		AssetCache.acquire("c", c);
+		assertThat(c.disposes).isEqualTo(1);
+		assertThat(AssetCache.getSize()).isEqualTo(200L);
+		AssetCache.acquire("b", c);
+		assertThat(c.loads).isEqualTo(3);
+		AssetCache.release("b");
+		AssetCache.release("c");
+	}
+	
+	@Test public void neverEvictsReferencedAssets(){
+		Counter c = new Counter();
+		AssetCache.setBudget(0);
+		AssetCache.acquire("a", c);
+		assertThat(c.disposes).isEqualTo(0);
+		AssetCache.release("a");
+		assertThat(c.disposes).isEqualTo(1);
+	}
+	
+	@Test public void managersLoadSharedAssetsWithoutLocking(){
+		final AssetManager m = new NullAssetManager();
+		final boolean[] locked = { true };
+		m.shared("a", new Counter() {
+			public Object load() {
+				locked[0] = Thread.holdsLock(m.assets);
+				return super.load();
+			}
+		});
+		assertThat(locked[0]).isFalse();
+		m.release();
+	}
+	
+	@Test public void managersReleaseTheReferenceOfARaceLost(){
+		final AssetManager m = new NullAssetManager();
+		final Object winner = new Object();
+		Counter c = new Counter() {
+			public Object load() {
+				// another thread shares the same asset meanwhile
+				m.assets.put("a", winner);
+				return super.load();
+			}
+		};
+		AssetCache.setBudget(0);
+		assertThat(m.shared("a", c)).isSameAs(winner);
+		assertThat(c.disposes).isEqualTo(1);
+		m.release();
+	}
+}
@@ -0,0 +1,107 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class AssetFutureTest {
+  
+	private static class Recorder implements AssetFuture.Listener<String> {
+		String asset = null;
+		Throwable error = null;
+		int calls = 0;
+		public void loaded(String asset) {
+			this.asset = asset;
+			calls++;
+		}
+		public void failed(Throwable error) {
+			this.error = error;
+			calls++;
+		}
+	}
+  
+	private static Callable<String> value(final String value) {
+		return new Callable<String>() {
+			public String call() {
+				return value;
+			}
+		};
+	}
+  
+	@Test public void listenerIsCalledOnDispatch(){
+		NullAssetManager assets = new NullAssetManager();
+		AssetFuture<String> future = assets.async(value("asset"));
+		Recorder recorder = new Recorder();
+		future.setListener(recorder);
+		assets.await();
+		assertThat(future.isDone()).isTrue();
+		assertThat(future.isFailed()).isFalse();
+		assertThat(recorder.calls).isEqualTo(0);
+		assets.dispatch();
+		assertThat(recorder.calls).isEqualTo(1);
+		assertThat(recorder.asset).isEqualTo("asset");
+		assets.dispatch();
+		assertThat(recorder.calls).isEqualTo(1);
+	}
+  
+	@Test public void listenerSetAfterDispatchIsCalledImmediately(){
+		NullAssetManager assets = new NullAssetManager();
+		AssetFuture<String> future = assets.async(value("asset"));
+		assets.await();
+		assets.dispatch();
+		Recorder recorder = new Recorder();
+		future.setListener(recorder);
+		assertThat(recorder.asset).isEqualTo("asset");
+		assertThat(future.get()).isEqualTo("asset");
+	}
+  
+	@Test public void failureIsPassedToListener(){
+		NullAssetManager assets = new NullAssetManager();
+		final RuntimeException problem = new RuntimeException("missing file");
+		AssetFuture<String> future = assets.async(new Callable<String>() {
+			public String call() {
+				throw problem;
+			}
+		});
+		Recorder recorder = new Recorder();
+		future.setListener(recorder);
+		assets.await();
+		assets.dispatch();
+		assertThat(future.isFailed()).isTrue();
+		assertThat(recorder.calls).isEqualTo(1);
+		assertThat(recorder.error).isSameAs(problem);
+	}
+  
+	@Test(expected = Error.class) public void getThrowsWhenLoadingFailed(){
+		NullAssetManager assets = new NullAssetManager();
+		AssetFuture<String> future = assets.async(new Callable<String>() {
+			public String call() {
+				throw new RuntimeException("missing file");
+			}
+		});
+		future.get();
+	}
+  
+	@Test public void progressCountsDoneLoads(){
+		NullAssetManager assets = new NullAssetManager();
+		assertThat(assets.getProgress()).isEqualTo(1f);
+		final CountDownLatch gate = new CountDownLatch(1);
+		Callable<String> blocked = new Callable<String>() {
+			public String call() throws InterruptedException {
+				gate.await();
+				return "asset";
+			}
+		};
+		assets.async(blocked);
+		assets.async(blocked);
+		assertThat(assets.getProgress()).isEqualTo(0f);
+		assertThat(assets.isLoaded()).isFalse();
+		gate.countDown();
+		assets.await();
+		assertThat(assets.getProgress()).isEqualTo(1f);
+		assertThat(assets.isLoaded()).isTrue();
+	}
+}
@@ -0,0 +1,47 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AtlasPackerTest {
+  
+	@Test public void packsSmallRectanglesInOnePage(){
+		AtlasPacker packer = new AtlasPacker(64, 64, 0);
+		int pages = packer.pack(new int[] {32, 32, 32, 32}, new int[] {32, 32, 32, 32});
+		assertThat(pages).isEqualTo(1);
+	}
+	
+	@Test public void opensNewPagesWhenFull(){
+		AtlasPacker packer = new AtlasPacker(64, 64, 0);
+		int pages = packer.pack(new int[] {64, 64, 10}, new int[] {64, 64, 10});
+		assertThat(pages).isEqualTo(3);
+	}
+	
+	@Test public void placesRectanglesInsidePagesWithoutOverlap(){
+		Random random = new Random(42);
+		int n = 300;
+		int[] w = new int[n], h = new int[n];
+		for (int i = 0; i < n; i++) {
+			w[i] = 4 + random.nextInt(60);
+			h[i] = 4 + random.nextInt(60);
+		}
+		AtlasPacker packer = new AtlasPacker(512, 512, 1);
+		packer.pack(w, h);
+		for (int i = 0; i < n; i++) {
+			assertThat(packer.getX(i) + w[i]).isLessThanOrEqualTo(512);
+			assertThat(packer.getY(i) + h[i]).isLessThanOrEqualTo(512);
+			for (int j = i + 1; j < n; j++) {
+				boolean overlap = packer.getPage(i) == packer.getPage(j) &&
+					packer.getX(i) < packer.getX(j) + w[j] && packer.getX(j) < packer.getX(i) + w[i] &&
+					packer.getY(i) < packer.getY(j) + h[j] && packer.getY(j) < packer.getY(i) + h[i];
+				assertThat(overlap).isFalse();
+			}
+		}
+	}
+	
+	@Test(expected = Error.class) public void rejectsRectanglesLargerThanPage(){
+		new AtlasPacker(64, 64, 0).pack(new int[] {65}, new int[] {1});
+	}
+}
@@ -0,0 +1,40 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+
+public class AtlasTest {
+  
+	private static class Pages extends NullAssetManager {
+		int decoded = 0, disposed = 0;
+		boolean supported = true;
+		public Sprite newSprite(String path) {
+			decoded++;
+			return new NullSprite(16, 16);
+		}
+		protected Sprite newAtlasPage(int width, int height, String[] paths, int[] xs, int[] ys) {
+			return supported ? new NullSprite(width, height) : null;
+		}
+		protected void disposeSprite(Sprite sprite) {
+			disposed++;
+		}
+	}
+  
+	@Test public void releasesTheImagesDecodedForTheirSizes(){
+		Pages assets = new Pages();
+		Atlas atlas = assets.newAtlas(64, 64, "a.png", "b.png", "c.png");
+		assertThat(atlas.getPageCount()).isEqualTo(1);
+		assertThat(assets.decoded).isEqualTo(3);
+		assertThat(assets.disposed).isEqualTo(3);
+		assertThat(atlas.getSprite("b.png").getWidth()).isEqualTo(16);
+	}
+  
+	@Test public void keepsTheImagesWithoutPages(){
+		Pages assets = new Pages();
+		assets.supported = false;
+		Atlas atlas = assets.newAtlas(64, 64, "a.png", "b.png");
+		assertThat(atlas.getPageCount()).isEqualTo(0);
+		assertThat(assets.disposed).isEqualTo(0);
+		assertThat(atlas.getSprite("a.png")).isNotNull();
+	}
+}
@@ -0,0 +1,97 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ChunkedTileMapTest {
+  
+	// 8x8 pixel tiles, so each chunk of 32x32 tiles is 256 pixels wide
+	private static final int CHUNK = 256;
+  
+	private static class Counting implements ChunkedTileMap.Source {
+		AtomicInteger loads = new AtomicInteger();
+		volatile int failures = 0;
+		public int[] load(int row, int col, int rows, int cols) {
+			loads.incrementAndGet();
+			if (failures > 0) {
+				failures--;
+				throw new RuntimeException("corrupted chunk");
+			}
+			int[] tiles = new int[rows*cols];
+			for (int k = 0; k < tiles.length; k++)
+				tiles[k] = col == 0 ? -1 : col + k;
+			return tiles;
+		}
+	}
+  
+	private static ChunkedTileMap map(ChunkedTileMap.Source source, int rows, int cols, int maxChunks) {
+		return new ChunkedTileMap(source, rows, cols, new TileSet(new NullSprite(16, 16), 2, 2), 32, maxChunks);
+	}
+  
+	private static void await(ChunkedTileMap map, int i, int j) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!map.isResident(i, j) && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		assertThat(map.isResident(i, j)).isTrue();
+	}
+  
+	@Test public void loadsChunksAroundTheView() throws InterruptedException {
+		Counting source = new Counting();
+		ChunkedTileMap map = map(source, 32*4, 32*4, 16);
+		assertThat(map.isResident(0, 0)).isFalse();
+		map.update(0, 0, 10, 10);
+		assertThat(map.getResidentChunks()).isEqualTo(4);
+		await(map, 0, 0);
+		await(map, 0, 40);
+		await(map, 40, 0);
+		await(map, 40, 40);
+		assertThat(map.get(40, 40)).isEqualTo(32 + 8*32 + 8);
+		assertThat(map.isResident(64, 0)).isFalse();
+		assertThat(map.get(64, 0)).isEqualTo(ChunkedTileMap.UNLOADED);
+		map.update(0, 0, 10, 10);
+		assertThat(source.loads.get()).isEqualTo(4);
+	}
+  
+	@Test public void negativeTilesAreResident() throws InterruptedException {
+		ChunkedTileMap map = map(new Counting(), 32, 32, 4);
+		map.update(0, 0, 10, 10);
+		await(map, 0, 0);
+		assertThat(map.get(0, 0)).isEqualTo(-1);
+		assertThat(map.isResident(0, 0)).isTrue();
+	}
+  
+	@Test public void evictsLeastRecentlyViewedChunks() throws InterruptedException {
+		ChunkedTileMap map = map(new Counting(), 32, 32*10, 5);
+		map.update(0, 0, 1, 1);
+		map.update(2*CHUNK, 0, 1, 1);
+		map.update(4*CHUNK, 0, 1, 1);
+		assertThat(map.getResidentChunks()).isEqualTo(5);
+		await(map, 0, 32);
+		assertThat(map.isResident(0, 0)).isFalse();
+		await(map, 0, 5*32);
+	}
+  
+	@Test public void failedLoadsAreReportedAndRequestedAgain() throws InterruptedException {
+		Counting source = new Counting();
+		source.failures = 1;
+		ChunkedTileMap map = map(source, 32, 32, 4);
+		map.update(0, 0, 1, 1);
+		Error reported = null;
+		long deadline = System.currentTimeMillis() + 5000;
+		while (reported == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+			try {
+				map.update(0, 0, 1, 1);
+			} catch (Error e) {
+				reported = e;
+			}
+		}
+		assertThat(reported).isNotNull();
+		assertThat(reported.getCause().getMessage()).isEqualTo("corrupted chunk");
+		await(map, 0, 0);
+		assertThat(source.loads.get()).isEqualTo(2);
+	}
+}
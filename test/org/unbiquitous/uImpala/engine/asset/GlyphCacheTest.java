@@ -0,0 +1,103 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class GlyphCacheTest {
+  
+	private static class Pages extends NullAssetManager {
+		int created = 0, disposed = 0;
+		protected Sprite newSprite(BufferedImage image) {
+			created++;
+			return new NullSprite(image.getWidth(), image.getHeight());
+		}
+		protected void disposeSprite(Sprite sprite) {
+			disposed++;
+		}
+	}
+  
+	private static GlyphCache glyphs(Pages assets) {
+		return new GlyphCache(assets, new Font(Font.SANS_SERIF, Font.PLAIN, 24), true);
+	}
+  
+	@Test public void placesGlyphsApartInsideThePage(){
+		GlyphCache.Layout layout = glyphs(new Pages()).layout("Hello, World!");
+		GlyphCache.Glyph[] gs = layout.glyphs;
+		assertThat(gs.length).isEqualTo(13);
+		assertThat(gs[2]).isSameAs(gs[3]);
+		for (int a = 0; a < gs.length; a++) {
+			assertThat(gs[a].x + gs[a].width <= GlyphCache.PAGE_SIZE).isTrue();
+			assertThat(gs[a].y + gs[a].height <= GlyphCache.PAGE_SIZE).isTrue();
+			if (a > 0)
+				assertThat(layout.xs[a] - gs[a].offsetX > layout.xs[a - 1] - gs[a - 1].offsetX).isTrue();
+			for (int b = 0; b < a; b++) {
+				if (gs[a] == gs[b] || gs[a].width == 0 || gs[b].width == 0)
+					continue;
+				boolean apart = gs[a].x >= gs[b].x + gs[b].width || gs[b].x >= gs[a].x + gs[a].width ||
+					gs[a].y >= gs[b].y + gs[b].height || gs[b].y >= gs[a].y + gs[a].height;
+				assertThat(apart).isTrue();
+			}
+		}
+	}
+  
+	@Test public void widthIsTheSumOfAdvances(){
+		GlyphCache glyphs = glyphs(new Pages());
+		GlyphCache.Layout one = glyphs.layout("m"), two = glyphs.layout("mm");
+		assertThat(two.width - 2*one.glyphs[0].advance < 1).isTrue();
+		assertThat(two.width >= 2*one.glyphs[0].advance).isTrue();
+		assertThat(two.height).isEqualTo(one.height);
+	}
+  
+	@Test public void cachesRecentLayouts(){
+		GlyphCache glyphs = glyphs(new Pages());
+		GlyphCache.Layout layout = glyphs.layout("score: 10");
+		assertThat(glyphs.layout("score: 10")).isSameAs(layout);
+		for (int k = 0; k < GlyphCache.MAX_LAYOUTS; k++)
+			glyphs.layout("score: " + k);
+		assertThat(glyphs.layout("score: 10")).isSameAs(layout);
+		for (int k = 0; k < GlyphCache.MAX_LAYOUTS; k++)
+			glyphs.layout("time: " + k);
+		assertThat(glyphs.layout("score: 10")).isNotSameAs(layout);
+	}
+  
+	@Test public void replacesPagesOnlyWhenGlyphsAreAdded(){
+		Pages assets = new Pages();
+		GlyphCache glyphs = glyphs(assets);
+		assertThat(glyphs.isSupported()).isTrue();
+		glyphs.layout("abc");
+		Sprite page = glyphs.page(0);
+		assertThat(glyphs.page(0)).isSameAs(page);
+		glyphs.layout("cab");
+		assertThat(glyphs.page(0)).isSameAs(page);
+		assertThat(assets.disposed).isEqualTo(1);
+		glyphs.layout("xyz");
+		assertThat(glyphs.page(0)).isNotSameAs(page);
+		assertThat(assets.created).isEqualTo(3);
+		assertThat(assets.disposed).isEqualTo(2);
+	}
+  
+	@Test public void managersShareGlyphsOnlyOfEqualFonts(){
+		Pages assets = new Pages();
+		Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 24);
+		GlyphCache glyphs = assets.glyphs(font, true);
+		assertThat(assets.glyphs(new Font(Font.SANS_SERIF, Font.PLAIN, 24), true)).isSameAs(glyphs);
+		assertThat(assets.glyphs(font, false)).isNotSameAs(glyphs);
+		assertThat(assets.glyphs(font.deriveFont(24.5f), true)).isNotSameAs(glyphs);
+		assertThat(assets.glyphs(font.deriveFont(AffineTransform.getScaleInstance(2, 1)), true)).isNotSameAs(glyphs);
+	}
+  
+	@Test public void managersDisposePagesOnRelease(){
+		Pages assets = new Pages();
+		GlyphCache glyphs = assets.glyphs(new Font(Font.SANS_SERIF, Font.PLAIN, 24), true);
+		glyphs.layout("abc");
+		glyphs.page(0);
+		assets.release();
+		assertThat(assets.disposed).isEqualTo(1);
+		assertThat(assets.glyphs(new Font(Font.SANS_SERIF, Font.PLAIN, 24), true)).isNotSameAs(glyphs);
+	}
+}
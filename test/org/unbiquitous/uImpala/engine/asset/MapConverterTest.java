@@ -0,0 +1,115 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+public class MapConverterTest {
+  
+	private static String temp(String suffix) throws IOException {
+		File file = File.createTempFile("map", suffix);
+		file.deleteOnExit();
+		return file.getPath();
+	}
+  
+	private static Map sample(int rows, int cols, int max) {
+		Map map = new Map(rows, cols);
+		long modulus = max < 0 ? 16 : (long)max + 1;
+		for (int i = 0; i < rows; i++) {
+			for (int j = 0; j < cols; j++)
+				map.set(i, j, (int)(((long)(i*cols + j)*7919) % modulus));
+		}
+		map.set(rows - 1, cols - 1, max);
+		return map;
+	}
+  
+	private static void assertSameValues(Map actual, Map expected) {
+		assertThat(actual.getRows()).isEqualTo(expected.getRows());
+		assertThat(actual.getCols()).isEqualTo(expected.getCols());
+		for (int i = 0; i < expected.getRows(); i++) {
+			for (int j = 0; j < expected.getCols(); j++)
+				assertThat(actual.get(i, j)).isEqualTo(expected.get(i, j));
+		}
+	}
+  
+	@Test public void writesHeaderAndPackedValues() throws IOException {
+		String path = temp(".umap");
+		MapConverter.write(sample(3, 5, 3), path, false);
+		DataInputStream in = new DataInputStream(new FileInputStream(path));
+		try {
+			assertThat(in.readInt()).isEqualTo(Map.MAGIC);
+			assertThat(in.readUnsignedByte()).isEqualTo(Map.VERSION);
+			assertThat(in.readUnsignedByte()).isEqualTo(2);
+			assertThat(in.readUnsignedByte()).isEqualTo(0);
+			assertThat(in.readUnsignedByte()).isEqualTo(0);
+			assertThat(in.readInt()).isEqualTo(3);
+			assertThat(in.readInt()).isEqualTo(5);
+		} finally {
+			in.close();
+		}
+		// 15 values of 2 bits fit in 4 bytes
+		assertThat(new File(path).length()).isEqualTo(Map.HEADER + 4L);
+	}
+  
+	@Test public void roundTripsEveryBitWidth() throws IOException {
+		int[] maxima = {1, 3, 15, 255, 65535, 70000, -1};
+		int[] bits = {1, 2, 4, 8, 16, 32, 32};
+		for (int k = 0; k < maxima.length; k++) {
+			for (int z = 0; z < 2; z++) {
+				Map map = sample(7, 9, maxima[k]);
+				String path = temp(".umap");
+				MapConverter.write(map, path, z == 1);
+				Map loaded = new Map(path);
+				assertThat(loaded.getBits()).isEqualTo(bits[k]);
+				assertThat(loaded.isReadOnly()).isTrue();
+				assertSameValues(loaded, map);
+			}
+		}
+	}
+  
+	@Test public void deflatedMapsAreSmaller() throws IOException {
+		Map map = new Map(64, 64);
+		map.set(10, 10, 200);
+		String plain = temp(".umap"), deflated = temp(".umap");
+		MapConverter.write(map, plain, false);
+		MapConverter.write(map, deflated, true);
+		assertThat(new File(deflated).length() < new File(plain).length()).isTrue();
+		assertSameValues(new Map(deflated), new Map(plain));
+	}
+  
+	@Test(expected = Error.class) public void rejectsDeflatedMapsEndingEarly() throws IOException {
+		String path = temp(".umap");
+		MapConverter.write(sample(8, 8, 15), path, true);
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			// more rows than the deflated stream holds
+			file.seek(8);
+			file.writeInt(16);
+		} finally {
+			file.close();
+		}
+		new Map(path);
+	}
+  
+	@Test public void convertsTextMaps() throws IOException {
+		String csv = temp(".csv"), binary = temp(".umap");
+		FileWriter out = new FileWriter(csv);
+		try {
+			out.write("2,3,\n0,1,2,\n3,4,5,\n");
+		} finally {
+			out.close();
+		}
+		MapConverter.convert(csv, binary, false);
+		Map text = new Map(csv), loaded = new Map(binary);
+		assertThat(loaded.getBits()).isEqualTo(4);
+		assertThat(loaded.get(1, 2)).isEqualTo(5);
+		assertSameValues(loaded, text);
+	}
+}
@@ -0,0 +1,69 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+
+public class MapTest {
+  
+	@Test public void startsWithOneBitPerValue(){
+		Map map = new Map(3, 5);
+		assertThat(map.getBits()).isEqualTo(1);
+		assertThat(map.get(2, 4)).isEqualTo(0);
+	}
+	
+	@Test public void growsStorageToFitValues(){
+		Map map = new Map(3, 5);
+		map.set(0, 0, 1);
+		map.set(1, 2, 200);
+		assertThat(map.getBits()).isEqualTo(8);
+		map.set(2, 4, 70000);
+		assertThat(map.getBits()).isEqualTo(32);
+		map.set(2, 3, -7);
+		assertThat(map.get(0, 0)).isEqualTo(1);
+		assertThat(map.get(1, 2)).isEqualTo(200);
+		assertThat(map.get(2, 4)).isEqualTo(70000);
+		assertThat(map.get(2, 3)).isEqualTo(-7);
+	}
+	
+	@Test public void keepsPackedNeighboursWhenWriting(){
+		Map map = new Map(1, 8);
+		map.write(0, 0, 1, 8, new int[] {1, 2, 3, 0, 3, 2, 1, 0}, 0);
+		assertThat(map.getBits()).isEqualTo(2);
+		map.set(0, 3, 3);
+		int[] values = new int[8];
+		map.read(0, 0, 1, 8, values, 0);
+		assertThat(values).isEqualTo(new int[] {1, 2, 3, 3, 3, 2, 1, 0});
+	}
+	
+	@Test public void sharesValuesWithReadOnlyViews(){
+		Map map = new Map(4, 4);
+		Map view = map.view(1, 1, 2, 2);
+		map.set(2, 2, 9);
+		assertThat(view.get(1, 1)).isEqualTo(9);
+		assertThat(view.isReadOnly()).isTrue();
+		assertThat(view.getRows()).isEqualTo(2);
+	}
+	
+	@Test(expected = Error.class) public void rejectsWritesThroughViews(){
+		new Map(4, 4).view().set(0, 0, 1);
+	}
+	
+	@Test(expected = Error.class) public void rejectsReadsOutOfViews(){
+		// the position exists in the map, but not in the view
+		new Map(4, 4).view(1, 1, 2, 2).get(0, 2);
+	}
+	
+	@Test(expected = Error.class) public void rejectsWritesOutOfTheMap(){
+		new Map(4, 4).set(-1, 0, 1);
+	}
+	
+	@Test public void copiesAreIndependent(){
+		Map map = new Map(2, 2);
+		map.set(0, 1, 5);
+		Map copy = map.view(0, 1, 2, 1).copy();
+		copy.set(0, 0, 6);
+		assertThat(map.get(0, 1)).isEqualTo(5);
+		assertThat(copy.get(0, 0)).isEqualTo(6);
+		assertThat(copy.getCols()).isEqualTo(1);
+	}
+}
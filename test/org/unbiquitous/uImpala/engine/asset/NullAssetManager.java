@@ -0,0 +1,60 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import java.awt.Font;
+
+import org.unbiquitous.uImpala.util.Color;
+import org.unbiquitous.uImpala.util.math.Point;
+
+/**
+ * Asset manager that loads nothing, for tests with no platform.
+ */
+public class NullAssetManager extends AssetManager {
+  
+	public static void install() {
+		factory = new Factory() {
+			public AssetManager create() {
+				return new NullAssetManager();
+			}
+		};
+	}
+  
+	public static void install(final AssetManager assets) {
+		factory = new Factory() {
+			public AssetManager create() {
+				return assets;
+			}
+		};
+	}
+  
+	public Sprite newSprite(String path) {
+		return null;
+	}
+  
+	public Text newText(String fontPath, String text) {
+		return null;
+	}
+  
+	public Text newText(Font font, String text) {
+		return null;
+	}
+  
+	public Audio newAudio(String path) {
+		return null;
+	}
+  
+	public SimetricShape newSimetricShape(Point center, Color paint, float radius, int numberOfSides) {
+		return null;
+	}
+  
+	public SimetricShape newCircle(Point center, Color paint, float radius) {
+		return null;
+	}
+  
+	public Rectangle newRectangle(Point center, Color paint, float width, float height) {
+		return null;
+	}
+  
+	public void destroy() {
+  
+	}
+}
@@ -0,0 +1,37 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import org.unbiquitous.uImpala.engine.io.Screen;
+import org.unbiquitous.uImpala.util.Color;
+import org.unbiquitous.uImpala.util.Corner;
+
+/**
+ * Sprite that draws nothing, for tests with no platform.
+ */
+public class NullSprite extends Sprite {
+	private int width, height;
+  
+	public NullSprite(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+  
+	public int getWidth() {
+		return width;
+	}
+  
+	public int getHeight() {
+		return height;
+	}
+  
+	public void render(Screen screen, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color) {
+  
+	}
+  
+	public void resetClip() {
+  
+	}
+  
+	public void clip(float x, float y, float w, float h) {
+  
+	}
+}
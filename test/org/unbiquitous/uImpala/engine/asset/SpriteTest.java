@@ -0,0 +1,58 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.unbiquitous.uImpala.engine.io.Screen;
+import org.unbiquitous.uImpala.util.Color;
+import org.unbiquitous.uImpala.util.Corner;
+
+public class SpriteTest {
+  
+	private static class Recording extends NullSprite {
+		List<String> calls = new ArrayList<String>();
+		String clip = "whole";
+		boolean fail = false;
+		Recording() {
+			super(64, 32);
+		}
+		public void render(Screen screen, float x, float y, Corner corner, float opacity, float angle, float scaleX, float scaleY, Color color) {
+			calls.add("render " + clip);
+			if (fail)
+				throw new RuntimeException("lost device");
+		}
+		public void resetClip() {
+			clip = "whole";
+			calls.add("resetClip");
+		}
+		public void clip(float x, float y, float w, float h) {
+			clip = (int)x + "," + (int)y + "," + (int)w + "," + (int)h;
+			calls.add("clip " + clip);
+		}
+	}
+  
+	@Test public void regionRenderRestoresTheClip(){
+		Recording sprite = new Recording();
+		sprite.region(16, 0, 16, 32).render(null, 0, 0);
+		sprite.render(null, 0, 0);
+		assertThat(sprite.calls).isEqualTo(Arrays.asList(
+			"clip 16,0,16,32", "render 16,0,16,32", "resetClip", "render whole"));
+	}
+  
+	@Test public void regionRenderRestoresTheClipWhenRenderFails(){
+		Recording sprite = new Recording();
+		sprite.fail = true;
+		boolean thrown = false;
+		try {
+			sprite.region(0, 0, 8, 8).render(null, 0, 0);
+		} catch (RuntimeException e) {
+			thrown = true;
+		}
+		assertThat(thrown).isTrue();
+		assertThat(sprite.clip).isEqualTo("whole");
+	}
+}
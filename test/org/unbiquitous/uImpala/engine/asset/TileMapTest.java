@@ -0,0 +1,108 @@
+package org.unbiquitous.uImpala.engine.asset;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+
+public class TileMapTest {
+  
+	private static class Baking extends NullAssetManager {
+		int baked = 0, disposed = 0;
+		boolean supported = true;
+		protected Sprite newTileChunk(TileSet tileSet, int[] tiles, int rows, int cols) {
+			if (!supported)
+				return null;
+			baked++;
+			return new NullSprite(cols*tileSet.tileWidth, rows*tileSet.tileHeight);
+		}
+		protected void disposeSprite(Sprite sprite) {
+			disposed++;
+		}
+	}
+  
+	// 8x8 pixel tiles, so each chunk of 16x16 tiles is 128 pixels wide
+	private static final int CHUNK = 128;
+  
+	private static TileMap tileMap(Map map, Baking assets) {
+		return new TileMap(map, new TileSet(new NullSprite(16, 16), 2, 2), assets);
+	}
+  
+	private static void render(TileMap tileMap) {
+		tileMap.render(null, 0, 0, 0, 0, 2*CHUNK, 2*CHUNK);
+	}
+  
+	@Test public void bakesEachChunkOnce(){
+		Baking assets = new Baking();
+		TileMap tileMap = tileMap(new Map(32, 32), assets);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(4);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(4);
+		tileMap.invalidate(20, 3);
+		assertThat(assets.disposed).isEqualTo(1);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(5);
+		tileMap.invalidate();
+		assertThat(assets.disposed).isEqualTo(5);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(9);
+		tileMap.setChunkSize(8);
+		assertThat(assets.disposed).isEqualTo(9);
+	}
+  
+	@Test public void writesDiscardOnlyTheirChunks(){
+		Baking assets = new Baking();
+		Map map = new Map(32, 32);
+		TileMap tileMap = tileMap(map, assets);
+		render(tileMap);
+		map.set(20, 3, 2);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(5);
+		map.write(0, 15, 1, 2, new int[] {1, 1}, 0);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(7);
+		assertThat(assets.disposed).isEqualTo(3);
+		for (int k = 0; k <= Map.CHANGES; k++)
+			map.set(0, 0, k%2);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(11);
+	}
+  
+	@Test public void writesToTheMapDiscardChunksOfViews(){
+		Baking assets = new Baking();
+		Map map = new Map(64, 64);
+		TileMap tileMap = tileMap(map.view(32, 32, 32, 32), assets);
+		render(tileMap);
+		map.set(0, 0, 1);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(4);
+		map.set(63, 63, 1);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(5);
+	}
+  
+	@Test public void evictsLeastRecentlyRenderedChunks(){
+		Baking assets = new Baking();
+		TileMap tileMap = tileMap(new Map(16, 48), assets);
+		tileMap.setMaxBaked(2);
+		for (int k = 0; k < 3; k++)
+			tileMap.render(null, 0, 0, k*CHUNK, 0, CHUNK, CHUNK);
+		assertThat(assets.baked).isEqualTo(3);
+		tileMap.render(null, 0, 0, 2*CHUNK, 0, CHUNK, CHUNK);
+		tileMap.render(null, 0, 0, CHUNK, 0, CHUNK, CHUNK);
+		assertThat(assets.baked).isEqualTo(3);
+		tileMap.render(null, 0, 0, 0, 0, CHUNK, CHUNK);
+		assertThat(assets.baked).isEqualTo(4);
+		assertThat(assets.disposed).isEqualTo(2);
+	}
+  
+	@Test public void rendersTilesWithoutBaking(){
+		Baking assets = new Baking();
+		assets.supported = false;
+		Map map = new Map(32, 32);
+		map.set(5, 5, 1);
+		TileMap tileMap = tileMap(map, assets);
+		render(tileMap);
+		render(tileMap);
+		assertThat(assets.baked).isEqualTo(0);
+	}
+}
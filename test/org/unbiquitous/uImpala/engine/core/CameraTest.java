@@ -0,0 +1,97 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+
+public class CameraTest {
+  
+	private static class Counted extends GameObject {
+		int renders = 0;
+		protected void update() {}
+		protected void render(GameRenderers renderers) {
+			renders++;
+		}
+	}
+  
+	private static Counted box(float x, float y) {
+		Counted o = new Counted();
+		o.setBounds(x, y, 10, 10);
+		return o;
+	}
+  
+	@Test public void skipsTreesOutsideTheCamera(){
+		Counted root = new Counted(), near = box(0, 0), far = box(1000, 1000);
+		Counted nearChild = box(20, 20), farChild = box(1020, 1020);
+		root.add(near);
+		root.add(far);
+		near.add(nearChild);
+		far.add(farChild);
+		root.updateTree();
+		root.updateTree();
+		root.renderTree(new GameRenderers(), new Camera(0, 0, 100, 100));
+		assertThat(root.renders).isEqualTo(1);
+		assertThat(near.renders).isEqualTo(1);
+		assertThat(nearChild.renders).isEqualTo(1);
+		assertThat(far.renders).isEqualTo(0);
+		assertThat(farChild.renders).isEqualTo(0);
+	}
+  
+	@Test public void treeBoundsFollowChildren(){
+		Counted root = new Counted(), group = box(1000, 1000), child = box(1000, 1000);
+		root.add(group);
+		group.add(child);
+		root.updateTree();
+		root.updateTree();
+		Camera camera = new Camera(0, 0, 100, 100);
+		root.renderTree(new GameRenderers(), camera);
+		assertThat(child.renders).isEqualTo(0);
+		child.setBounds(50, 50, 10, 10);
+		root.updateTree();
+		root.renderTree(new GameRenderers(), camera);
+		assertThat(group.renders).isEqualTo(0);
+		assertThat(child.renders).isEqualTo(1);
+		group.setFrozen(true);
+		group.setVisible(true);
+		child.setBounds(500, 500, 10, 10);
+		root.updateTree();
+		root.renderTree(new GameRenderers(), camera);
+		assertThat(child.renders).isEqualTo(1);
+	}
+  
+	@Test public void frozenTreesFollowMovedDescendants(){
+		Counted root = new Counted(), group = box(1000, 1000), child = box(1000, 1000), leaf = box(1000, 1000);
+		root.add(group);
+		group.add(child);
+		child.add(leaf);
+		root.updateTree();
+		root.updateTree();
+		root.updateTree();
+		group.setFrozen(true);
+		group.setVisible(true);
+		Camera camera = new Camera(0, 0, 100, 100);
+		root.renderTree(new GameRenderers(), camera);
+		assertThat(child.renders).isEqualTo(0);
+		child.setBounds(50, 50, 10, 10);
+		root.updateTree();
+		root.renderTree(new GameRenderers(), camera);
+		assertThat(group.renders).isEqualTo(0);
+		assertThat(child.renders).isEqualTo(1);
+		assertThat(leaf.renders).isEqualTo(0);
+		child.setBounds(1000, 1000, 10, 10);
+		leaf.setBounds(60, 60, 10, 10);
+		root.renderTree(new GameRenderers(), camera);
+		assertThat(child.renders).isEqualTo(1);
+		assertThat(leaf.renders).isEqualTo(1);
+	}
+  
+	@Test public void treesWithoutBoundsAreAlwaysRendered(){
+		Counted root = new Counted(), group = box(1000, 1000), child = new Counted();
+		root.add(group);
+		group.add(child);
+		root.updateTree();
+		root.updateTree();
+		root.renderTree(new GameRenderers(), new Camera(0, 0, 100, 100));
+		assertThat(group.renders).isEqualTo(0);
+		assertThat(child.renders).isEqualTo(1);
+	}
+}
@@ -0,0 +1,77 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+public class GameObjectMemoryTest {
+
+	private static class Particle extends GameObject {
+		protected void update() {}
+		protected void render(GameRenderers renderers) {}
+	}
+
+	private static long allocated() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+			Thread.currentThread().getId()
+		);
+	}
+
+	@Test public void leavesTakeFewBytesEach(){
+		int n = 100000;
+		GameObject[] objects = new GameObject[n];
+		// loads the classes before measuring
+		objects[0] = new Particle();
+		long before = allocated();
+		if (before < 0)
+			return;   // allocation counters not supported by this VM
+		for (int i = 0; i < n; i++)
+			objects[i] = new Particle();
+		long bytes = (allocated() - before)/n;
+		assertThat(objects[n - 1].getChildren().size()).isEqualTo(0);
+		assertThat(bytes).isLessThan(48L);
+	}
+
+	@Test public void leavesAllocateNoChildren(){
+		GameObject a = new Particle(), b = new Particle();
+		a.updateTree();
+		assertThat(a.getChildren().size()).isEqualTo(0);
+		assertThat(a.getChildren()).isSameAs(b.getChildren());
+	}
+
+	@Test public void flagsAreIndependent(){
+		GameObject o = new Particle();
+		o.setFrozen(true);
+		o.setVisible(true);
+		assertThat(o.isFrozen()).isTrue();
+		assertThat(o.isVisible()).isTrue();
+		assertThat(o.isDestroyed()).isFalse();
+		assertThat(o.isRenderable()).isTrue();
+		assertThat(o.isUpdatable()).isFalse();
+		o.setVisible(false);
+		assertThat(o.isRenderable()).isFalse();
+		o.setFrozen(false);
+		o.setDestroy(true);
+		assertThat(o.isFrozen()).isFalse();
+		assertThat(o.isDestroyed()).isTrue();
+		assertThat(o.isUpdatable()).isFalse();
+	}
+
+	@Test public void childrenAllocatedOnFirstAdd(){
+		GameObject parent = new Particle(), child = new Particle();
+		parent.updateTree();
+		parent.add(child);
+		assertThat(parent.getChildren().size()).isEqualTo(0);
+		parent.updateTree();
+		assertThat(parent.getChildren().size()).isEqualTo(1);
+		child.setDestroy(true);
+		parent.updateTree();
+		assertThat(parent.getChildren().size()).isEqualTo(0);
+	}
+}
@@ -0,0 +1,109 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.unbiquitous.uImpala.engine.asset.NullAssetManager;
+
+public class GameObjectTreeSceneTest {
+  
+	private static class Counted extends GameObject {
+		int updates = 0, renders = 0, destroys = 0;
+		protected void update() {
+			updates++;
+		}
+		protected void render(GameRenderers renderers) {
+			renders++;
+		}
+		protected void destroy() {
+			destroys++;
+		}
+	}
+  
+	private static class Scene extends GameObjectTreeScene {}
+  
+	@Before public void setUp(){
+		NullAssetManager.install();
+	}
+  
+	@Test public void sweepsChildrenOfFrozenVisibleParentsWhenRendered(){
+		Scene scene = new Scene();
+		Counted parent = new Counted(), child = new Counted();
+		scene.add(parent);
+		parent.add(child);
+		scene.update();
+		scene.update();
+		parent.setFrozen(true);
+		parent.setVisible(true);
+		child.setDestroy(true);
+		scene.update();
+		assertThat(child.destroys).isEqualTo(0);
+		scene.render();
+		assertThat(child.destroys).isEqualTo(1);
+		assertThat(child.renders).isEqualTo(0);
+		assertThat(parent.getChildren()).isEmpty();
+	}
+  
+	@Test public void sweepsObjectsOfFrozenScenesWhenRendered(){
+		Scene scene = new Scene();
+		Counted o = new Counted(), kept = new Counted();
+		scene.add(o);
+		scene.add(kept);
+		scene.update();
+		scene.setFrozen(true);
+		o.setDestroy(true);
+		scene.render();
+		assertThat(o.destroys).isEqualTo(1);
+		assertThat(scene.getChildren().size()).isEqualTo(1);
+		assertThat(kept.renders).isEqualTo(1);
+	}
+  
+	@Test public void keepsChildrenOfFrozenInvisibleParentsUntilUnfrozen(){
+		Scene scene = new Scene();
+		Counted parent = new Counted(), child = new Counted();
+		scene.add(parent);
+		parent.add(child);
+		scene.update();
+		scene.update();
+		parent.setFrozen(true);
+		child.setDestroy(true);
+		scene.update();
+		scene.render();
+		assertThat(child.destroys).isEqualTo(0);
+		parent.setFrozen(false);
+		scene.update();
+		assertThat(child.destroys).isEqualTo(1);
+	}
+  
+	private static class Slow extends GameObject {
+		static AtomicInteger inFlight = new AtomicInteger(), updates = new AtomicInteger();
+		protected void update() {
+			inFlight.incrementAndGet();
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				updates.incrementAndGet();
+				inFlight.decrementAndGet();
+			}
+		}
+		protected void render(GameRenderers renderers) {}
+	}
+  
+	@Test public void parallelUpdateWaitsForEveryChild(){
+		Scene scene = new Scene();
+		scene.setParallel(true);
+		for (int i = 0; i < 8; i++)
+			scene.add(new Slow());
+		scene.update();
+		for (int frame = 1; frame <= 20; frame++) {
+			scene.update();
+			assertThat(Slow.inFlight.get()).isEqualTo(0);
+			assertThat(Slow.updates.get()).isEqualTo(8*frame);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+import org.unbiquitous.uImpala.engine.asset.NullAssetManager;
+
+public class GameSceneSnapshotTest {
+  
+	private static class Offscreen extends NullAssetManager {
+		int created = 0, drawn = 0, disposed = 0;
+		boolean supported = true;
+		public Runnable newSnapshot(Runnable renderer) {
+			if (!supported)
+				return null;
+			created++;
+			renderer.run();
+			return new Runnable() {
+				public void run() {
+					drawn++;
+				}
+			};
+		}
+		public void disposeSnapshot(Runnable snapshot) {
+			disposed++;
+		}
+	}
+  
+	private static class Counted extends GameScene {
+		int captures = 0, operations = 0;
+		protected void update() {}
+		public void render() {}
+		protected boolean capture(GameRenderers renderers) {
+			captures++;
+			renderers.put(0, new Runnable() {
+				public void run() {
+					operations++;
+				}
+			});
+			return true;
+		}
+	}
+  
+	private static class Stack extends Game {
+		protected void initImpl() {}
+	}
+  
+	private static Offscreen install() {
+		Offscreen assets = new Offscreen();
+		NullAssetManager.install(assets);
+		return assets;
+	}
+  
+	@Test public void rendersFrozenSceneOnceToAnImage(){
+		Offscreen assets = install();
+		Counted scene = new Counted();
+		scene.setFrozen(true);
+		for (int i = 0; i < 5; i++)
+			scene.snapshot().replay();
+		assertThat(scene.captures).isEqualTo(1);
+		assertThat(scene.operations).isEqualTo(1);
+		assertThat(assets.created).isEqualTo(1);
+		assertThat(assets.drawn).isEqualTo(5);
+	}
+  
+	@Test public void invalidateDisposesTheOldImage(){
+		Offscreen assets = install();
+		Counted scene = new Counted();
+		scene.setFrozen(true);
+		scene.snapshot().replay();
+		scene.invalidate();
+		scene.snapshot().replay();
+		assertThat(scene.captures).isEqualTo(2);
+		assertThat(assets.created).isEqualTo(2);
+		assertThat(assets.disposed).isEqualTo(1);
+		scene.setFrozen(false);
+		scene.setFrozen(true);
+		scene.snapshot().replay();
+		assertThat(scene.captures).isEqualTo(3);
+		assertThat(assets.disposed).isEqualTo(2);
+	}
+  
+	@Test public void disposesTheImageOncePerPop(){
+		Offscreen assets = install();
+		Stack game = new Stack();
+		game.push(new Counted());
+		game.updateStack();
+		for (int i = 1; i <= 3; i++) {
+			Counted scene = new Counted();
+			scene.setFrozen(true);
+			scene.setVisible(true);
+			game.push(scene);
+			game.updateStack();
+			game.renderScenes();
+			game.renderScenes();
+			game.pop();
+			game.updateStack();
+			assertThat(assets.created).isEqualTo(i);
+			assertThat(assets.disposed).isEqualTo(i);
+		}
+	}
+  
+	@Test public void disposesTheImageWhenUnfrozen(){
+		Offscreen assets = install();
+		Stack game = new Stack();
+		Counted scene = new Counted();
+		scene.setFrozen(true);
+		scene.setVisible(true);
+		game.push(scene);
+		game.updateStack();
+		game.renderScenes();
+		scene.setFrozen(false);
+		game.renderScenes();
+		game.renderScenes();
+		assertThat(assets.created).isEqualTo(1);
+		assertThat(assets.disposed).isEqualTo(1);
+	}
+  
+	@Test public void replaysOperationsWithoutOffscreenImages(){
+		Offscreen assets = install();
+		assets.supported = false;
+		Counted scene = new Counted();
+		scene.setFrozen(true);
+		for (int i = 0; i < 3; i++)
+			scene.snapshot().replay();
+		assertThat(scene.captures).isEqualTo(1);
+		assertThat(scene.operations).isEqualTo(3);
+	}
+}
@@ -0,0 +1,45 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+import org.unbiquitous.uImpala.engine.asset.NullAssetManager;
+
+public class HeadlessRunnerTest {
+  
+	public static class TestGame extends Game {
+		protected void initImpl() {
+			NullAssetManager.install();
+		}
+	}
+  
+	public static class TestScene extends GameObjectTreeScene {
+		static int updates = 0, renders = 0;
+  
+		public TestScene() {
+			add(new GameObject() {
+				protected void update() {
+					updates++;
+				}
+				protected void render(GameRenderers renderers) {
+					renders++;
+				}
+			});
+		}
+  
+		public void render() {
+			throw new Error("No screen in headless mode!");
+		}
+	}
+  
+	@Test public void runsTrivialSceneWithoutScreen(){
+		GameSettings settings = new GameSettings();
+		settings.put("first_scene", TestScene.class);
+		HeadlessRunner runner = new HeadlessRunner(new TestGame(), settings);
+		HeadlessRunner.Report report = runner.runFrames(10);
+		runner.close();
+		assertThat(report.getFrames()).isEqualTo(10);
+		// the object is added at the end of the first update
+		assertThat(TestScene.updates).isEqualTo(9);
+		assertThat(TestScene.renders).isEqualTo(10);
+	}
+}
@@ -0,0 +1,92 @@
+package org.unbiquitous.uImpala.engine.core;
+
+import static org.fest.assertions.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpatialIndexTest {
+  
+	private static class Box extends GameObject {
+		Box(float x, float y, float w, float h) {
+			setBounds(x, y, w, h);
+		}
+		protected void update() {}
+		protected void render(GameRenderers renderers) {}
+	}
+  
+	private static List<GameObject> boxes(SpatialIndex index, int n, long seed) {
+		Random random = new Random(seed);
+		List<GameObject> boxes = new ArrayList<GameObject>();
+		for (int i = 0; i < n; i++) {
+			Box b = new Box(random.nextFloat()*2000 - 1000, random.nextFloat()*2000 - 1000,
+				random.nextFloat()*100, random.nextFloat()*100);
+			index.add(b);
+			boxes.add(b);
+		}
+		return boxes;
+	}
+  
+	private static float distance(GameObject o, float x, float y) {
+		return (float)Math.sqrt(o.bounds().distance2(x, y));
+	}
+  
+	@Test public void rangeQueryMatchesLinearScan(){
+		SpatialIndex index = new SpatialIndex(64);
+		List<GameObject> boxes = boxes(index, 1000, 1);
+		Random random = new Random(2);
+		for (int q = 0; q < 100; q++) {
+			float x = random.nextFloat()*2000 - 1000, y = random.nextFloat()*2000 - 1000;
+			float w = random.nextFloat()*300, h = random.nextFloat()*300;
+			List<GameObject> found = new ArrayList<GameObject>();
+			int n = index.query(x, y, w, h, found);
+			HashSet<GameObject> expected = new HashSet<GameObject>();
+			for (GameObject o : boxes) {
+				if (o.bounds().overlaps(x, y, x + w, y + h))
+					expected.add(o);
+			}
+			assertThat(n).isEqualTo(found.size());
+			assertThat(found.size()).isEqualTo(expected.size());
+			assertThat(new HashSet<GameObject>(found).equals(expected)).isTrue();
+		}
+	}
+  
+	@Test public void nearestMatchesLinearScan(){
+		SpatialIndex index = new SpatialIndex(32);
+		List<GameObject> boxes = boxes(index, 500, 3);
+		Random random = new Random(4);
+		for (int q = 0; q < 100; q++) {
+			float x = random.nextFloat()*4000 - 2000, y = random.nextFloat()*4000 - 2000;
+			float best = Float.MAX_VALUE;
+			for (GameObject o : boxes)
+				best = Math.min(best, distance(o, x, y));
+			GameObject nearest = index.nearest(x, y, Float.MAX_VALUE);
+			assertThat(distance(nearest, x, y)).isEqualTo(best);
+		}
+		assertThat(index.nearest(5000, 5000, 10)).isNull();
+	}
+  
+	@Test public void followsMovesAndDestruction(){
+		SpatialIndex index = new SpatialIndex(10);
+		Box a = new Box(0, 0, 5, 5), b = new Box(100, 100, 5, 5);
+		index.add(a);
+		index.add(b);
+		List<GameObject> found = new ArrayList<GameObject>();
+		assertThat(index.at(2, 2, found)).isEqualTo(1);
+		a.setBounds(200, 200, 5, 5);
+		assertThat(index.at(2, 2, found)).isEqualTo(0);
+		assertThat(index.at(202, 202, found)).isEqualTo(1);
+		assertThat(index.nearest(190, 190, 100)).isSameAs(a);
+		a.destroyTree();
+		assertThat(index.contains(a)).isFalse();
+		assertThat(index.size()).isEqualTo(1);
+		assertThat(index.nearest(190, 190, 1000)).isSameAs(b);
+		b.clearBounds();
+		assertThat(index.size()).isEqualTo(0);
+		assertThat(index.nearest(0, 0, Float.MAX_VALUE)).isNull();
+	}
+}
@@ -0,0 +1,52 @@
+package org.unbiquitous.uImpala.engine.time;
+
+import static org.fest.assertions.api.Assertions.*;
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test public void startsEmpty(){
+		Histogram h = new Histogram();
+		assertThat(h.count()).isEqualTo(0);
+		assertThat(h.mean()).isEqualTo(0L);
+		assertThat(h.percentile(99)).isEqualTo(0L);
+	}
+	
+	@Test public void calculatesMeanAndMax(){
+		Histogram h = new Histogram();
+		h.record(10);
+		h.record(20);
+		h.record(30);
+		assertThat(h.count()).isEqualTo(3);
+		assertThat(h.mean()).isEqualTo(20L);
+		assertThat(h.max()).isEqualTo(30L);
+	}
+	
+	@Test public void keepsOnlyTheLastWindow(){
+		Histogram h = new Histogram(2);
+		h.record(1000000);
+		h.record(10);
+		h.record(20);
+		assertThat(h.count()).isEqualTo(2);
+		assertThat(h.max()).isEqualTo(20L);
+		assertThat(h.percentile(100)).isEqualTo(20L);
+	}
+	
+	@Test public void approximatesPercentilesWithinAQuarter(){
+		Histogram h = new Histogram(1000);
+		for (int i = 1; i <= 1000; i++)
+			h.record(i*1000L);
+		assertThat(h.percentile(50)).isGreaterThanOrEqualTo(500000L);
+		assertThat(h.percentile(50)).isLessThanOrEqualTo(625000L);
+		assertThat(h.percentile(99)).isGreaterThanOrEqualTo(990000L);
+		assertThat(h.percentile(99)).isLessThanOrEqualTo(1000000L);
+	}
+	
+	@Test public void discardsEverythingOnReset(){
+		Histogram h = new Histogram();
+		h.record(10);
+		h.reset();
+		assertThat(h.count()).isEqualTo(0);
+		assertThat(h.max()).isEqualTo(0L);
+	}
+}